@@ -34,6 +34,11 @@ public final class Constants
         public static final double kRotationEncoderRPM2RadPerSec = kRotationEncoderRot2Rad / 60;
         public static final double kPRotation = 0.7;
         public static final double kDRotation = 0.008;
+        public static final double kDriveOpenLoopRampRateSeconds = 0;
+
+        // Only used by the simulated module, roughly a quarter of the robot's mass at the wheel
+        public static final double kDriveSimMoiKgMetersSquared = 0.025;
+        public static final double kRotationSimMoiKgMetersSquared = 0.004;
     }
 
     public static final class DriveConstants {
@@ -42,11 +47,14 @@ public final class Constants
         // Distance between right and left wheels
         public static final double kWheelBase = 0.59;
 
-        public static final SwerveDriveKinematics kDriveKinematics = new SwerveDriveKinematics(
+        // Front left, front right, back left, back right
+        public static final Translation2d[] kModuleTranslations = {
                 new Translation2d(kWheelBase / 2, kTrackWidth / 2),
                 new Translation2d(kWheelBase / 2, -kTrackWidth / 2),
                 new Translation2d(-kWheelBase / 2, kTrackWidth / 2),
-                new Translation2d(-kWheelBase / 2, -kTrackWidth / 2));
+                new Translation2d(-kWheelBase / 2, -kTrackWidth / 2)};
+
+        public static final SwerveDriveKinematics kDriveKinematics = new SwerveDriveKinematics(kModuleTranslations);
 
         public static final int kFrontLeftDriveMotorPort = 4;
         public static final int kBackLeftDriveMotorPort = 3;
@@ -90,6 +98,52 @@ public final class Constants
         public static final double kTeleDriveMaxAccelerationUnitsPerSecond = 3;
         public static final double kTeleDriveMaxAngularAccelerationUnitsPerSecond = 3;
         public static final double kTeleDriveMaxAngularSpeedRadiansPerSecond = kPhysicalMaxAngularSpeedRadiansPerSecond / 2;
+
+        // PLACEHOLDERS for PathPlanner's RobotConfig, there is no GUI settings file deployed. The mass,
+        // MOI and friction are not measured on this robot; weigh it and characterize it before trusting
+        // autonomous path following
+        public static final double kRobotMassKg = 50;
+        public static final double kRobotMoiKgMetersSquared = 6;
+        public static final double kWheelCoefficientOfFriction = 1.2;
+        public static final double kDriveCurrentLimitAmps = 40;
+    }
+
+    public static final class OdometryConstants {
+        // 250 Hz, run from its own TimedRobot callback rather than the 50 Hz periodic
+        public static final double kOdometryPeriodSeconds = 0.004;
+
+        // The consistency check runs once per navX sample, so ask for the fastest rate it supports over SPI
+        public static final int kNavXUpdateRateHz = 200;
+        public static final double kGyroTimeoutSeconds = 0.05;
+        public static final int kGyroReadAttempts = 3;
+
+        // A module is trusted fully while its velocity agrees with the others to within this much
+        public static final double kSlipToleranceMetersPerSecond = 0.1;
+        public static final double kSlipToleranceRatio = 0.15;
+
+        // navX world-frame linear acceleration that counts as being hit or pushed
+        public static final double kCollisionAccelThresholdG = 1.0;
+        public static final double kCollisionHoldSeconds = 0.2;
+        public static final double kCollisionToleranceScale = 0.5;
+    }
+
+    public static final class CharacterizationConstants {
+        public static final double kQuasistaticRampVoltsPerSecond = 1.0;
+        public static final double kQuasistaticDurationSeconds = 4.0;
+        public static final double kDynamicStepVolts = 4.0;
+        public static final double kDynamicDurationSeconds = 1.5;
+        public static final double kRestSeconds = 1.0;
+
+        // Samples slower than this are in static friction and are left out of the fit
+        public static final double kMotionThreshold = 0.05;
+
+        // LQR weights used to suggest feedback gains from the fitted model
+        public static final double kNominalVoltage = 12.0;
+        public static final double kMaxControlEffortVolts = 7.0;
+        public static final double kDriveVelocityToleranceMetersPerSecond = 0.2;
+        public static final double kRotationPositionToleranceRad = 0.05;
+        public static final double kRotationVelocityToleranceRadPerSecond = 1.0;
+        public static final double kControlLoopPeriodSeconds = 0.02;
     }
 
     public static final class OIConstants {
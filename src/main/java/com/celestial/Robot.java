@@ -1,5 +1,7 @@
 package com.celestial;
 
+import com.celestial.Constants.OdometryConstants;
+import com.celestial.subsystems.SwerveSubsystem;
 import com.revrobotics.spark.SparkLowLevel;
 import com.revrobotics.spark.SparkMax;
 import edu.wpi.first.math.controller.PIDController;
@@ -18,9 +20,30 @@ public class Robot extends TimedRobot
     public Robot()
     {
         robotContainer = new RobotContainer();
+
+        SwerveSubsystem swerve = robotContainer.getSwerveSubsystem();
+        if (isSimulation())
+        {
+            // Same callback so the simulated hardware always moves before odometry reads it
+            addPeriodic(() -> {
+                swerve.simulationStep(OdometryConstants.kOdometryPeriodSeconds);
+                swerve.highRatePeriodic();
+            }, OdometryConstants.kOdometryPeriodSeconds);
+        }
+        else
+        {
+            addPeriodic(swerve::highRatePeriodic, OdometryConstants.kOdometryPeriodSeconds);
+        }
     }
     
 
+    /** For the headless simulation test, which drives this robot through its real callbacks. */
+    RobotContainer getRobotContainer()
+    {
+        return robotContainer;
+    }
+
+
     @Override
     public void robotPeriodic()
     {
@@ -5,23 +5,31 @@
 
 package com.celestial;
 
-import java.util.HashMap;
+import java.io.IOException;
 import com.pathplanner.lib.commands.FollowPathCommand;
+import com.pathplanner.lib.config.ModuleConfig;
+import com.pathplanner.lib.config.PIDConstants;
+import com.pathplanner.lib.config.RobotConfig;
 import com.pathplanner.lib.controllers.PPHolonomicDriveController;
 import com.pathplanner.lib.path.PathPlannerPath;
+import com.celestial.Constants.DriveConstants;
+import com.celestial.Constants.ModuleConstants;
 import com.celestial.Constants.OperatorConstants;
+import com.celestial.commands.Autos;
 import com.celestial.commands.SwerveJoystickCommand;
 import com.celestial.subsystems.SwerveSubsystem;
 
-import edu.wpi.first.math.controller.PIDController;
-import edu.wpi.first.math.kinematics.SwerveModuleState;
-import edu.wpi.first.wpilibj.Joystick;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.XboxController;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
+import org.json.simple.parser.ParseException;
 
 
 
@@ -42,7 +50,20 @@ public class RobotContainer
 
     private final XboxController controller = new XboxController(OperatorConstants.DRIVER_CONTROLLER_PORT);
     
-    PathPlannerPath path = PathPlannerPath.fromPathFile("straight");
+    private final PathPlannerPath path = loadPath("straight");
+    
+    private final RobotConfig robotConfig = new RobotConfig(
+            DriveConstants.kRobotMassKg,
+            DriveConstants.kRobotMoiKgMetersSquared,
+            new ModuleConfig(
+                    ModuleConstants.kWheelDiamater / 2,
+                    DriveConstants.kPhysicalMaxSpeedMetersPerSecond,
+                    DriveConstants.kWheelCoefficientOfFriction,
+                    DCMotor.getNEO(1).withReduction(1 / ModuleConstants.kDriveMotorGearRatio),
+                    DriveConstants.kDriveCurrentLimitAmps,
+                    1),
+            DriveConstants.kModuleTranslations);
+    
     /** The container for the robot. Contains subsystems, OI devices, and commands. */
     public RobotContainer()
     {
@@ -68,6 +89,15 @@ public class RobotContainer
                 () -> controller.getRawAxis(Constants.OIConstants.kDriverXAxis),
                 () -> controller.getRawAxis(Constants.OIConstants.kDriverRotAxis),
                 () -> !controller.getLeftBumperButton()));
+
+        SmartDashboard.putData("Characterize Drive", Autos.characterizeDrive(swerveSubsystem));
+        SmartDashboard.putData("Characterize Rotation", Autos.characterizeRotation(swerveSubsystem));
+    }
+    
+    
+    public SwerveSubsystem getSwerveSubsystem()
+    {
+        return swerveSubsystem;
     }
     
     
@@ -78,23 +108,37 @@ public class RobotContainer
      */
     public Command getAutonomousCommand()
     {
-        HashMap<String, Command> eventMap = new HashMap<>();
+        if (path == null)
+        {
+            return Commands.none();
+        }
+        
         return new SequentialCommandGroup(
-              new InstantCommand(() -> {
-                      if(true){
-                              swerveSubsystem.resetOdometry(path.getStartingHolonomicPose());
-                      }
-              }),
-              new FollowPathCommand(
-                      path,
-                      swerveSubsystem.getPose(),
-                      speedsSupplier,
-                      output,
-                      new PPHolonomicDriveController(new PIDController(0, 0, 0), new PIDController(0, 0, 0))
-                      robotconfig,
-                      false,
-                      swerveSubsystem
-              )
-      );
+                new InstantCommand(() -> path.getStartingHolonomicPose().ifPresent(swerveSubsystem::resetOdometry)),
+                new FollowPathCommand(
+                        path,
+                        swerveSubsystem::getPose,
+                        swerveSubsystem::getRobotRelativeSpeeds,
+                        (speeds, feedforwards) -> swerveSubsystem.driveRobotRelative(speeds),
+                        new PPHolonomicDriveController(new PIDConstants(0, 0, 0), new PIDConstants(0, 0, 0)),
+                        robotConfig,
+                        () -> false,
+                        swerveSubsystem
+                )
+        );
+    }
+    
+    
+    private static PathPlannerPath loadPath(String name)
+    {
+        try
+        {
+            return PathPlannerPath.fromPathFile(name);
+        }
+        catch (IOException | ParseException e)
+        {
+            DriverStation.reportError("Failed to load path " + name + ": " + e.getMessage(), e.getStackTrace());
+            return null;
+        }
     }
 }
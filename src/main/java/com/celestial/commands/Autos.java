@@ -5,6 +5,7 @@
 
 package com.celestial.commands;
 
+import com.celestial.subsystems.SwerveSubsystem;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
 
@@ -12,7 +13,29 @@ import edu.wpi.first.wpilibj2.command.Commands;
 
 public final class Autos
 {
-
+    /**
+     * Runs the quasistatic and dynamic tests on all four drive motors, then publishes the fitted
+     * feedforward and suggested velocity gains under {@code SysId/Drive}.
+     */
+    public static Command characterizeDrive(SwerveSubsystem swerveSubsystem)
+    {
+        return Commands.startEnd(swerveSubsystem::startDriveCharacterization, swerveSubsystem::stopCharacterization, swerveSubsystem)
+                .until(swerveSubsystem::isCharacterizationFinished)
+                .withName("Characterize Drive");
+    }
+    
+    
+    /**
+     * Runs the quasistatic and dynamic tests on all four steering motors, then publishes the fitted
+     * feedforward and suggested position gains under {@code SysId/Rotation}.
+     */
+    public static Command characterizeRotation(SwerveSubsystem swerveSubsystem)
+    {
+        return Commands.startEnd(swerveSubsystem::startRotationCharacterization, swerveSubsystem::stopCharacterization, swerveSubsystem)
+                .until(swerveSubsystem::isCharacterizationFinished)
+                .withName("Characterize Rotation");
+    }
+    
     
     private Autos()
     {
@@ -2,7 +2,9 @@ package com.celestial.commands;
 
 import com.celestial.Constants;
 import com.celestial.subsystems.SwerveSubsystem;
-import edu.wpi.first.math.filter.SlewRateLimiter;
+import com.celestial.tuning.AdjustableSlewRateLimiter;
+import com.celestial.tuning.TunableParameters;
+import com.celestial.tuning.TuningSnapshot;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
@@ -14,7 +16,8 @@ public class SwerveJoystickCommand extends Command {
     private final SwerveSubsystem swerveSubsystem;
     private final Supplier<Double> xSpdFunction, ySpdFunction, turningSpdFunction;
     private final Supplier<Boolean> fieldOrientedFunction;
-    private final SlewRateLimiter xLimiter, yLimiter, turningLimiter;
+    private final AdjustableSlewRateLimiter xLimiter, yLimiter, turningLimiter;
+    private final TunableParameters tuning = TunableParameters.getDefault();
 
     public SwerveJoystickCommand(SwerveSubsystem swerveSubsystem,
                              Supplier<Double> xSpdFunction, Supplier<Double> ySpdFunction, Supplier<Double> turningSpdFunction,
@@ -24,9 +27,10 @@ public class SwerveJoystickCommand extends Command {
         this.ySpdFunction = ySpdFunction;
         this.turningSpdFunction = turningSpdFunction;
         this.fieldOrientedFunction = fieldOrientedFunction;
-        this.xLimiter = new SlewRateLimiter(Constants.DriveConstants.kTeleDriveMaxAccelerationUnitsPerSecond);
-        this.yLimiter = new SlewRateLimiter(Constants.DriveConstants.kTeleDriveMaxAccelerationUnitsPerSecond);
-        this.turningLimiter = new SlewRateLimiter(Constants.DriveConstants.kTeleDriveMaxAngularAccelerationUnitsPerSecond);
+        TuningSnapshot limits = tuning.getSnapshot();
+        this.xLimiter = new AdjustableSlewRateLimiter(limits.driveAccelerationLimit());
+        this.yLimiter = new AdjustableSlewRateLimiter(limits.driveAccelerationLimit());
+        this.turningLimiter = new AdjustableSlewRateLimiter(limits.turningAccelerationLimit());
         addRequirements(swerveSubsystem);
     }
 
@@ -36,13 +40,17 @@ public class SwerveJoystickCommand extends Command {
         double xSpeed = xSpdFunction.get();
         double ySpeed = ySpdFunction.get();
         double turningSpeed = turningSpdFunction.get();
+        TuningSnapshot limits = tuning.getSnapshot();
 
         // 2. Apply deadband
-        xSpeed = Math.abs(xSpeed) > Constants.OIConstants.kDeadband ? xSpeed : 0.0;
-        ySpeed = Math.abs(ySpeed) > Constants.OIConstants.kDeadband ? ySpeed : 0.0;
-        turningSpeed = Math.abs(turningSpeed) > Constants.OIConstants.kDeadband ? turningSpeed : 0.0;
+        xSpeed = Math.abs(xSpeed) > limits.deadband() ? xSpeed : 0.0;
+        ySpeed = Math.abs(ySpeed) > limits.deadband() ? ySpeed : 0.0;
+        turningSpeed = Math.abs(turningSpeed) > limits.deadband() ? turningSpeed : 0.0;
 
         // 3. Make the driving smoother
+        xLimiter.setRateLimit(limits.driveAccelerationLimit());
+        yLimiter.setRateLimit(limits.driveAccelerationLimit());
+        turningLimiter.setRateLimit(limits.turningAccelerationLimit());
         xSpeed = xLimiter.calculate(xSpeed) * Constants.DriveConstants.kTeleDriveMaxSpeedMetersPerSecond;
         ySpeed = yLimiter.calculate(ySpeed) * Constants.DriveConstants.kTeleDriveMaxSpeedMetersPerSecond;
         turningSpeed = turningLimiter.calculate(turningSpeed)
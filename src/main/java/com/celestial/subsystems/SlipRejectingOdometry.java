@@ -0,0 +1,320 @@
+package com.celestial.subsystems;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+
+import java.util.Arrays;
+
+/**
+ * Swerve odometry that checks every module against the others before integrating it.
+ *
+ * <p>The navX and the SparkMax status frames all run on their own clocks, so a single loop sample
+ * rarely holds a fresh gyro reading and a fresh position from every module. The consistency stage
+ * therefore runs once per navX sample: encoder motion is accumulated until the gyro timestamp
+ * changes, and the rotation rate is taken from the gyro delta over the sensor's own sample period.
+ *
+ * <p>Modules are compared by their reported wheel velocity rather than their position delta, since
+ * a position frame landing just before or just after the read makes the delta swing between zero
+ * and two periods while the velocity barely moves. Each module's velocity, minus its share of the
+ * rotation (v = u + omega x r), is an estimate of the chassis velocity; it is compared with the median
+ * of the estimates from the other modules and its weight ramps down to zero once the residual
+ * leaves the tolerance band. The accumulated position deltas are then averaged with those weights,
+ * so a module whose frame was late still contributes the right distance on the next window.
+ *
+ * <p>A spike in the navX linear acceleration marks a collision, during which the band is tightened.
+ * If the navX stops producing samples the rotation rate falls back to a least-squares fit of the
+ * module velocities until it comes back.
+ *
+ * <p>{@link #update} does not allocate, so it can run in the high-rate odometry loop.
+ */
+public class SlipRejectingOdometry {
+    private final int moduleCount;
+    private final double[] moduleX;
+    private final double[] moduleY;
+    private final double moduleCenterX;
+    private final double moduleCenterY;
+    private final double moduleRadiusSquaredSum;
+    private final double maxModuleRadius;
+
+    private final double gyroPeriodSeconds;
+    private final double gyroTimeoutSeconds;
+    private final double slipToleranceMetersPerSecond;
+    private final double slipToleranceRatio;
+    private final double collisionAccelThresholdG;
+    private final double collisionHoldSeconds;
+    private final double collisionToleranceScale;
+
+    private final double[] lastDistances;
+    private final double[] lastAngles;
+    private final double[] chassisVx;
+    private final double[] chassisVy;
+    private final double[] chassisDx;
+    private final double[] chassisDy;
+    private final double[] weights;
+    private final double[] scratch;
+
+    private double poseX;
+    private double poseY;
+    private double headingRad;
+
+    private double lastGyroRad;
+    private double lastGyroTimestampSeconds;
+    private boolean gyroLost;
+    private double lastWindowTimestampSeconds;
+
+    private double collisionEndSeconds = Double.NEGATIVE_INFINITY;
+    private double lastTimestampSeconds;
+
+    public SlipRejectingOdometry(Translation2d[] moduleLocations, double gyroPeriodSeconds,
+            double gyroTimeoutSeconds, double slipToleranceMetersPerSecond, double slipToleranceRatio,
+            double collisionAccelThresholdG, double collisionHoldSeconds, double collisionToleranceScale) {
+        if (moduleLocations.length < 3) {
+            throw new IllegalArgumentException("Slip rejection needs at least three modules");
+        }
+
+        moduleCount = moduleLocations.length;
+        moduleX = new double[moduleCount];
+        moduleY = new double[moduleCount];
+        for (int i = 0; i < moduleCount; i++) {
+            moduleX[i] = moduleLocations[i].getX();
+            moduleY[i] = moduleLocations[i].getY();
+        }
+
+        double centerX = 0;
+        double centerY = 0;
+        for (int i = 0; i < moduleCount; i++) {
+            centerX += moduleX[i] / moduleCount;
+            centerY += moduleY[i] / moduleCount;
+        }
+        moduleCenterX = centerX;
+        moduleCenterY = centerY;
+
+        double radiusSquaredSum = 0;
+        double maxRadius = 0;
+        for (int i = 0; i < moduleCount; i++) {
+            double x = moduleX[i] - centerX;
+            double y = moduleY[i] - centerY;
+            radiusSquaredSum += x * x + y * y;
+            maxRadius = Math.max(maxRadius, Math.hypot(moduleX[i], moduleY[i]));
+        }
+        moduleRadiusSquaredSum = radiusSquaredSum;
+        maxModuleRadius = maxRadius;
+
+        this.gyroPeriodSeconds = gyroPeriodSeconds;
+        this.gyroTimeoutSeconds = gyroTimeoutSeconds;
+        this.slipToleranceMetersPerSecond = slipToleranceMetersPerSecond;
+        this.slipToleranceRatio = slipToleranceRatio;
+        this.collisionAccelThresholdG = collisionAccelThresholdG;
+        this.collisionHoldSeconds = collisionHoldSeconds;
+        this.collisionToleranceScale = collisionToleranceScale;
+
+        lastDistances = new double[moduleCount];
+        lastAngles = new double[moduleCount];
+        chassisVx = new double[moduleCount];
+        chassisVy = new double[moduleCount];
+        chassisDx = new double[moduleCount];
+        chassisDy = new double[moduleCount];
+        weights = new double[moduleCount];
+        scratch = new double[moduleCount];
+        Arrays.fill(weights, 1.0);
+    }
+
+    /**
+     * Resets the pose without needing the gyro or the drive encoders to be zeroed.
+     *
+     * @param timestampSeconds the current loop time
+     * @param pose the new field-relative pose
+     * @param gyroRad the current gyro heading in radians
+     * @param gyroTimestampSeconds the sensor timestamp of that gyro reading
+     * @param distancesMeters the current drive encoder positions, one per module
+     * @param anglesRad the current module angles in radians, one per module
+     */
+    public void resetPosition(double timestampSeconds, Pose2d pose, double gyroRad, double gyroTimestampSeconds,
+            double[] distancesMeters, double[] anglesRad) {
+        poseX = pose.getX();
+        poseY = pose.getY();
+        headingRad = pose.getRotation().getRadians();
+        lastGyroRad = gyroRad;
+        lastGyroTimestampSeconds = gyroTimestampSeconds;
+        gyroLost = false;
+        lastWindowTimestampSeconds = timestampSeconds;
+        lastTimestampSeconds = timestampSeconds;
+        System.arraycopy(distancesMeters, 0, lastDistances, 0, moduleCount);
+        System.arraycopy(anglesRad, 0, lastAngles, 0, moduleCount);
+        Arrays.fill(weights, 1.0);
+        collisionEndSeconds = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Takes one loop sample. The pose only moves when the sample closes a window, i.e. when the gyro
+     * has a new reading or has been silent for longer than the timeout.
+     *
+     * @param timestampSeconds the loop time the sample was read at
+     * @param gyroRad the latest gyro heading in radians, counter-clockwise positive
+     * @param gyroTimestampSeconds the sensor timestamp of that gyro reading
+     * @param distancesMeters the latest drive encoder positions, one per module
+     * @param velocitiesMetersPerSecond the latest drive encoder velocities, one per module
+     * @param anglesRad the module angles in radians, one per module
+     * @param accelXG the navX world-frame linear acceleration along X, in g
+     * @param accelYG the navX world-frame linear acceleration along Y, in g
+     */
+    public void update(double timestampSeconds, double gyroRad, double gyroTimestampSeconds,
+            double[] distancesMeters, double[] velocitiesMetersPerSecond, double[] anglesRad,
+            double accelXG, double accelYG) {
+        lastTimestampSeconds = timestampSeconds;
+        if (Math.hypot(accelXG, accelYG) > collisionAccelThresholdG) {
+            collisionEndSeconds = timestampSeconds + collisionHoldSeconds;
+        }
+
+        boolean gyroFresh = gyroTimestampSeconds != lastGyroTimestampSeconds;
+        double windowSeconds = timestampSeconds - lastWindowTimestampSeconds;
+        if (!gyroFresh && windowSeconds < gyroTimeoutSeconds) {
+            // Keep accumulating encoder motion until the gyro catches up
+            return;
+        }
+
+        // After an outage the gyro delta spans the whole gap, which the module fallback has already covered
+        boolean useGyro = gyroFresh && !gyroLost;
+        double dTheta;
+        double omega;
+        if (useGyro) {
+            dTheta = MathUtil.angleModulus(gyroRad - lastGyroRad);
+            // The sensor samples on its own fixed clock, so count whole periods rather than trusting
+            // the millisecond timestamp for the rate
+            double gyroPeriods = Math.max(1,
+                    Math.round((gyroTimestampSeconds - lastGyroTimestampSeconds) / gyroPeriodSeconds));
+            omega = dTheta / (gyroPeriods * gyroPeriodSeconds);
+        } else {
+            omega = estimateOmega(velocitiesMetersPerSecond, anglesRad);
+            dTheta = omega * windowSeconds;
+        }
+
+        if (gyroFresh) {
+            lastGyroRad = gyroRad;
+            lastGyroTimestampSeconds = gyroTimestampSeconds;
+        }
+        gyroLost = !gyroFresh;
+        lastWindowTimestampSeconds = timestampSeconds;
+
+        // Remove the rotational part of each module's motion, leaving its estimate of the chassis motion
+        for (int i = 0; i < moduleCount; i++) {
+            double cos = Math.cos(anglesRad[i]);
+            double sin = Math.sin(anglesRad[i]);
+            chassisVx[i] = velocitiesMetersPerSecond[i] * cos + omega * moduleY[i];
+            chassisVy[i] = velocitiesMetersPerSecond[i] * sin - omega * moduleX[i];
+
+            // The wheel turned while it covered this distance, so project it along the mid-window angle
+            double midAngle = lastAngles[i] + 0.5 * MathUtil.angleModulus(anglesRad[i] - lastAngles[i]);
+            double delta = distancesMeters[i] - lastDistances[i];
+            lastDistances[i] = distancesMeters[i];
+            lastAngles[i] = anglesRad[i];
+            chassisDx[i] = delta * Math.cos(midAngle) + dTheta * moduleY[i];
+            chassisDy[i] = delta * Math.sin(midAngle) - dTheta * moduleX[i];
+        }
+
+        double toleranceScale = isCollisionDetected() ? collisionToleranceScale : 1.0;
+        double weightSum = 0.0;
+        double dx = 0.0;
+        double dy = 0.0;
+        for (int i = 0; i < moduleCount; i++) {
+            double expectedVx = medianExcluding(chassisVx, i);
+            double expectedVy = medianExcluding(chassisVy, i);
+            double residual = Math.hypot(chassisVx[i] - expectedVx, chassisVy[i] - expectedVy);
+            // The velocity frames lag the gyro a little, which shows up in proportion to how fast we turn
+            double tolerance = toleranceScale * (slipToleranceMetersPerSecond + slipToleranceRatio
+                    * (Math.hypot(expectedVx, expectedVy) + Math.abs(omega) * maxModuleRadius));
+
+            // Full weight inside the band, fading to nothing at twice the band
+            weights[i] = MathUtil.clamp(2.0 - residual / tolerance, 0.0, 1.0);
+            weightSum += weights[i];
+            dx += weights[i] * chassisDx[i];
+            dy += weights[i] * chassisDy[i];
+        }
+
+        if (weightSum > 0.0) {
+            dx /= weightSum;
+            dy /= weightSum;
+        } else {
+            // Every module disagrees with the rest, so fall back to the median of all of them
+            dx = medianExcluding(chassisDx, -1);
+            dy = medianExcluding(chassisDy, -1);
+        }
+
+        integrate(dx, dy, dTheta);
+        headingRad = MathUtil.angleModulus(headingRad + dTheta);
+    }
+
+    public Pose2d getPoseMeters() {
+        return new Pose2d(poseX, poseY, new Rotation2d(headingRad));
+    }
+
+    /** Returns the weight given to a module on the last window, from 0 (rejected) to 1 (trusted). */
+    public double getModuleWeight(int moduleIndex) {
+        return weights[moduleIndex];
+    }
+
+    public boolean isCollisionDetected() {
+        return lastTimestampSeconds < collisionEndSeconds;
+    }
+
+    /** Least-squares rotation rate from the module velocities, used while the gyro is silent. */
+    private double estimateOmega(double[] velocitiesMetersPerSecond, double[] anglesRad) {
+        // Taken about the module centroid, so the shared translation drops out of the sum
+        double cross = 0;
+        for (int i = 0; i < moduleCount; i++) {
+            double vx = velocitiesMetersPerSecond[i] * Math.cos(anglesRad[i]);
+            double vy = velocitiesMetersPerSecond[i] * Math.sin(anglesRad[i]);
+            cross += (moduleX[i] - moduleCenterX) * vy - (moduleY[i] - moduleCenterY) * vx;
+        }
+        return cross / moduleRadiusSquaredSum;
+    }
+
+    /** Same closed form as {@link Pose2d#exp}, applied to the robot-relative twist. */
+    private void integrate(double dx, double dy, double dTheta) {
+        double sinTheta = Math.sin(dTheta);
+        double cosTheta = Math.cos(dTheta);
+
+        double s;
+        double c;
+        if (Math.abs(dTheta) < 1E-9) {
+            s = 1.0 - 1.0 / 6.0 * dTheta * dTheta;
+            c = 0.5 * dTheta;
+        } else {
+            s = sinTheta / dTheta;
+            c = (1 - cosTheta) / dTheta;
+        }
+
+        double localX = dx * s - dy * c;
+        double localY = dx * c + dy * s;
+
+        double headingCos = Math.cos(headingRad);
+        double headingSin = Math.sin(headingRad);
+        poseX += localX * headingCos - localY * headingSin;
+        poseY += localX * headingSin + localY * headingCos;
+    }
+
+    /** Median of {@code values}, skipping {@code excludedIndex} (pass -1 to use every value). */
+    private double medianExcluding(double[] values, int excludedIndex) {
+        int count = 0;
+        for (int i = 0; i < moduleCount; i++) {
+            if (i == excludedIndex) {
+                continue;
+            }
+
+            // Insertion sort into the scratch buffer, there are only a handful of modules
+            double value = values[i];
+            int j = count - 1;
+            while (j >= 0 && scratch[j] > value) {
+                scratch[j + 1] = scratch[j];
+                j--;
+            }
+            scratch[j + 1] = value;
+            count++;
+        }
+
+        int middle = count / 2;
+        return count % 2 == 1 ? scratch[middle] : 0.5 * (scratch[middle - 1] + scratch[middle]);
+    }
+}
@@ -1,20 +1,32 @@
 package com.celestial.subsystems;
 
 import com.celestial.Constants;
+import com.celestial.tuning.TunableParameters;
+import com.celestial.tuning.TuningSnapshot;
 import com.revrobotics.RelativeEncoder;
+import com.revrobotics.sim.SparkMaxSim;
 import com.revrobotics.spark.SparkBase;
 import com.revrobotics.spark.SparkClosedLoopController;
 import com.revrobotics.spark.SparkLowLevel;
 import com.revrobotics.spark.SparkMax;
 import com.revrobotics.spark.config.SparkMaxConfig;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.system.plant.LinearSystemId;
 import edu.wpi.first.wpilibj.AnalogEncoder;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.simulation.AnalogEncoderSim;
+import edu.wpi.first.wpilibj.simulation.DCMotorSim;
+import edu.wpi.first.wpilibj.simulation.RoboRioSim;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
-public class SwerveModule {
+import java.util.function.Consumer;
+
+public class SwerveModule implements AutoCloseable {
     private final SparkMax driveMotor;
     private final SparkMax rotationMotor;
 
@@ -25,14 +37,35 @@ public class SwerveModule {
     private final boolean absoluteEncoderReversed;
     private final double absoluteEncoderOffset;
 
-    private PIDController turningPidController;
+    private final PIDController turningPidController;
+    // Holds the wheels straight during drive characterization, which runs in the high-rate loop
+    private final PIDController steeringHoldController;
+
+    private final TunableParameters tuning = TunableParameters.getDefault();
+    private TuningSnapshot appliedGains;
+    private final Consumer<TuningSnapshot> motorGainsPusher = this::pushMotorGains;
+
+    // Held while configuring the drive SparkMax from the push thread, so close() can't free it mid-push
+    private final Object motorConfigLock = new Object();
+    private double pushedRampRateSeconds;
+    private boolean closed;
+
+    // Only created in simulation
+    private SparkMaxSim driveMotorSim;
+    private SparkMaxSim rotationMotorSim;
+    private AnalogEncoderSim absoluteEncoderSim;
+    private DCMotorSim drivePhysics;
+    private DCMotorSim rotationPhysics;
 
     public SwerveModule(int driveMotorId, int rotationMotorId, boolean driveMotorReversed, boolean rotationMotorReversed, int absoluteEncoderChannel, double absoluteEncoderOffset, boolean absoluteEncoderReversed) {
         driveMotor = new SparkMax(driveMotorId, SparkLowLevel.MotorType.kBrushless);
         rotationMotor = new SparkMax(rotationMotorId, SparkLowLevel.MotorType.kBrushless);
 
 
-        turningPidController = new PIDController(Constants.ModuleConstants.kPRotation, 0, Constants.ModuleConstants.kDRotation);
+        appliedGains = tuning.getSnapshot();
+        turningPidController = new PIDController(appliedGains.rotationP(), 0, appliedGains.rotationD());
+        steeringHoldController = new PIDController(appliedGains.rotationP(), 0, appliedGains.rotationD(),
+                Constants.OdometryConstants.kOdometryPeriodSeconds);
 
         absoluteEncoder = new AnalogEncoder(absoluteEncoderChannel);
         this.absoluteEncoderReversed = absoluteEncoderReversed;
@@ -40,9 +73,15 @@ public class SwerveModule {
 
         SparkMaxConfig driveMotorConfig = new SparkMaxConfig();
         driveMotorConfig.inverted(driveMotorReversed);
+        pushedRampRateSeconds = appliedGains.driveRampRateSeconds();
+        driveMotorConfig.openLoopRampRate(pushedRampRateSeconds);
         driveMotorConfig.encoder
                 .positionConversionFactor(Constants.ModuleConstants.kDriveEncoderRot2Meter)
                 .velocityConversionFactor(Constants.ModuleConstants.kDriveEncoderRPM2MeterPerSec);
+        // Match the odometry loop instead of the default 20 ms status frames
+        driveMotorConfig.signals
+                .primaryEncoderPositionPeriodMs((int) (Constants.OdometryConstants.kOdometryPeriodSeconds * 1000))
+                .primaryEncoderVelocityPeriodMs((int) (Constants.OdometryConstants.kOdometryPeriodSeconds * 1000));
 
         SparkMaxConfig rotationMotorConfig = new SparkMaxConfig();
         rotationMotorConfig.inverted(rotationMotorReversed);
@@ -58,8 +97,67 @@ public class SwerveModule {
         rotationEncoder = rotationMotor.getEncoder();
 
         turningPidController.enableContinuousInput(-Math.PI, Math.PI);
+        steeringHoldController.enableContinuousInput(-Math.PI, Math.PI);
+
+        if (RobotBase.isSimulation()) {
+            DCMotor neo = DCMotor.getNEO(1);
+            driveMotorSim = new SparkMaxSim(driveMotor, neo);
+            rotationMotorSim = new SparkMaxSim(rotationMotor, neo);
+            absoluteEncoderSim = new AnalogEncoderSim(absoluteEncoder);
+            drivePhysics = new DCMotorSim(LinearSystemId.createDCMotorSystem(neo,
+                    Constants.ModuleConstants.kDriveSimMoiKgMetersSquared,
+                    1 / Constants.ModuleConstants.kDriveMotorGearRatio), neo);
+            rotationPhysics = new DCMotorSim(LinearSystemId.createDCMotorSystem(neo,
+                    Constants.ModuleConstants.kRotationSimMoiKgMetersSquared,
+                    1 / Constants.ModuleConstants.kRotationMotorGearRatio), neo);
+            simulationStep(0);
+        }
 
         resetEncoders();
+
+        tuning.onChange(motorGainsPusher);
+    }
+
+    /**
+     * Advances the simulated module by {@code dtSeconds}: the SparkMax outputs drive a DC motor model
+     * for the wheel and for steering, which is then written back into the relative encoders and the
+     * absolute encoder.
+     */
+    public void simulationStep(double dtSeconds) {
+        double busVoltage = RoboRioSim.getVInVoltage();
+        double wheelRadius = Constants.ModuleConstants.kWheelDiamater / 2;
+
+        driveMotorSim.iterate(drivePhysics.getAngularVelocityRadPerSec() * wheelRadius, busVoltage, dtSeconds);
+        rotationMotorSim.iterate(rotationPhysics.getAngularVelocityRadPerSec(), busVoltage, dtSeconds);
+
+        drivePhysics.setInputVoltage(driveMotorSim.getAppliedOutput() * busVoltage);
+        rotationPhysics.setInputVoltage(rotationMotorSim.getAppliedOutput() * busVoltage);
+        drivePhysics.update(dtSeconds);
+        rotationPhysics.update(dtSeconds);
+
+        driveMotorSim.getRelativeEncoderSim().setPosition(drivePhysics.getAngularPositionRad() * wheelRadius);
+        driveMotorSim.getRelativeEncoderSim().setVelocity(drivePhysics.getAngularVelocityRadPerSec() * wheelRadius);
+        rotationMotorSim.getRelativeEncoderSim().setPosition(rotationPhysics.getAngularPositionRad());
+        rotationMotorSim.getRelativeEncoderSim().setVelocity(rotationPhysics.getAngularVelocityRadPerSec());
+
+        // Inverse of getAbsoluteEncoderRad()
+        double angle = rotationPhysics.getAngularPositionRad() * (absoluteEncoderReversed ? -1.0 : 1.0);
+        absoluteEncoderSim.set(MathUtil.inputModulus((angle + absoluteEncoderOffset) / (2.0 * Math.PI), 0, 1));
+    }
+
+    /** Runs on the tuning push thread, never in the control loop. */
+    private void pushMotorGains(TuningSnapshot gains) {
+        synchronized (motorConfigLock) {
+            // Most changes are steering gains, which don't need a CAN round trip
+            if (closed || gains.driveRampRateSeconds() == pushedRampRateSeconds) {
+                return;
+            }
+
+            pushedRampRateSeconds = gains.driveRampRateSeconds();
+            SparkMaxConfig driveMotorConfig = new SparkMaxConfig();
+            driveMotorConfig.openLoopRampRate(gains.driveRampRateSeconds());
+            driveMotor.configure(driveMotorConfig, SparkBase.ResetMode.kNoResetSafeParameters, SparkBase.PersistMode.kNoPersistParameters);
+        }
     }
 
 
@@ -99,7 +197,19 @@ public class SwerveModule {
         return new SwerveModulePosition(getDrivePosition(), new Rotation2d(getAbsoluteEncoderRad()));
     }
 
+    /** Picks up steering gains changed from the dashboard, one reference compare when nothing changed. */
+    private void refreshGains() {
+        TuningSnapshot gains = tuning.getSnapshot();
+        if (gains != appliedGains) {
+            turningPidController.setPID(gains.rotationP(), 0, gains.rotationD());
+            steeringHoldController.setPID(gains.rotationP(), 0, gains.rotationD());
+            appliedGains = gains;
+        }
+    }
+
     public void setDesiredState(SwerveModuleState state) {
+        refreshGains();
+
         if (Math.abs(state.speedMetersPerSecond) < 0.04) {
             stop();
             return;
@@ -112,35 +222,33 @@ public class SwerveModule {
         SmartDashboard.putNumber("Target Angle", state.angle.getDegrees());
     }
 
+    /** Open loop drive voltage for characterization, with the module held pointing forward. */
+    public void setDriveVoltage(double volts) {
+        refreshGains();
+        driveMotor.setVoltage(volts);
+        rotationMotor.set(steeringHoldController.calculate(getAbsoluteEncoderRad(), 0));
+    }
+
+    /** Open loop steering voltage for characterization, with the wheel stopped. */
+    public void setRotationVoltage(double volts) {
+        driveMotor.set(0);
+        rotationMotor.setVoltage(volts);
+    }
+
     public void stop() {
         driveMotor.set(0);
         rotationMotor.set(0);
     }
-}
-
-   /*NetworkTableInstance inst = NetworkTableInstance.getDefault();
-        DoubleTopic pTopic = inst.getDoubleTopic("swerveP");
-        DoubleTopic dTopic = inst.getDoubleTopic("swerveD");
 
-        DoubleSubscriber pSubscriber = pTopic.subscribe(0);
-        DoubleSubscriber dSubscriber = dTopic.subscribe(0);
-
-        pTopic.publish().set(0);
-        dTopic.publish().set(0);*/
-
-
-        /*inst.addListener(
-                pSubscriber,
-                EnumSet.of(NetworkTableEvent.Kind.kValueAll),
-                event -> {
-                    System.out.println("Change");
-                    turningPidController = new PIDController(pSubscriber.get(), 0, dSubscriber.get());
-                });
-
-        inst.addListener(
-                dSubscriber,
-                EnumSet.of(NetworkTableEvent.Kind.kValueAll),
-                event -> {
-                    System.out.println("Change");
-                    turningPidController = new PIDController(pSubscriber.get(), 0, dSubscriber.get());
-                });*/
+    @Override
+    public void close() {
+        tuning.removeOnChange(motorGainsPusher);
+        // A push that started before the consumer was removed finishes before the motors are freed
+        synchronized (motorConfigLock) {
+            closed = true;
+            driveMotor.close();
+            rotationMotor.close();
+            absoluteEncoder.close();
+        }
+    }
+}
@@ -1,20 +1,33 @@
 package com.celestial.subsystems;
 
 import com.celestial.Constants.DriveConstants;
+import com.celestial.Constants.CharacterizationConstants;
+import com.celestial.Constants.OdometryConstants;
+import com.celestial.sysid.CharacterizationFit;
+import com.celestial.sysid.CharacterizationMechanism;
+import com.celestial.sysid.CharacterizationResult;
+import com.celestial.sysid.CharacterizationRoutine;
 import com.kauailabs.navx.frc.AHRS;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.hal.SimDouble;
 import edu.wpi.first.networktables.*;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.SPI;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.SimDeviceSim;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ToDoubleFunction;
+
 public class SwerveSubsystem extends SubsystemBase
 {
 
@@ -54,10 +67,47 @@ public class SwerveSubsystem extends SubsystemBase
             DriveConstants.kBackRightAbsoluteEncoderOffsetRad,
             DriveConstants.kBackRightAbsoluteEncoderReversed);
 
-    private final AHRS gyro = new AHRS(SPI.Port.kMXP);
+    // Same order as DriveConstants.kModuleTranslations
+    private final SwerveModule[] modules = {frontLeft, frontRight, backLeft, backRight};
+
+    private final AHRS gyro = new AHRS(SPI.Port.kMXP, (byte) OdometryConstants.kNavXUpdateRateHz);
+
+    // Only set in simulation, the navX registers itself as a sim device named after its port
+    private final SimDouble navXSimYaw = RobotBase.isSimulation()
+            ? new SimDeviceSim("navX-Sensor[" + SPI.Port.kMXP.value + "]").getDouble("Yaw")
+            : null;
+
+    // The simulated navX is written every simulation step, so it behaves like a sensor running at the loop rate
+    private double simGyroTimestampSeconds;
+
+    // Heading and timestamp from the same navX sample, filled in by sampleGyro()
+    private double gyroSampleRad;
+    private double gyroSampleTimestampSeconds;
+
+    private final SlipRejectingOdometry odometer = new SlipRejectingOdometry(
+            DriveConstants.kModuleTranslations,
+            RobotBase.isSimulation()
+                    ? OdometryConstants.kOdometryPeriodSeconds
+                    : 1.0 / OdometryConstants.kNavXUpdateRateHz,
+            OdometryConstants.kGyroTimeoutSeconds,
+            OdometryConstants.kSlipToleranceMetersPerSecond,
+            OdometryConstants.kSlipToleranceRatio,
+            OdometryConstants.kCollisionAccelThresholdG,
+            OdometryConstants.kCollisionHoldSeconds,
+            OdometryConstants.kCollisionToleranceScale);
+
+    // Reused by the high-rate odometry loop so it doesn't allocate
+    private final double[] moduleDistances = new double[modules.length];
+    private final double[] moduleVelocities = new double[modules.length];
+    private final double[] moduleAngles = new double[modules.length];
 
-    private final SwerveDriveOdometry odometer = new SwerveDriveOdometry(DriveConstants.kDriveKinematics,
-            new Rotation2d(0), getSwerveModulePositions());
+    private final CharacterizationRoutine driveCharacterization = new CharacterizationRoutine(averagedMechanism(
+            SwerveModule::getDrivePosition, SwerveModule::getDriveVelocity, SwerveModule::setDriveVoltage));
+
+    private final CharacterizationRoutine rotationCharacterization = new CharacterizationRoutine(averagedMechanism(
+            SwerveModule::getRotationPosition, SwerveModule::getRotationVelocity, SwerveModule::setRotationVoltage));
+
+    private CharacterizationRoutine activeCharacterization;
 
     private Field2d field = new Field2d();
 
@@ -66,14 +116,42 @@ public class SwerveSubsystem extends SubsystemBase
     StructArrayPublisher<SwerveModuleState> publisher = inst.getDefault()
             .getStructArrayTopic("MyStates", SwerveModuleState.struct).publish();
 
+    // The navX has to finish its startup calibration before it can be zeroed
+    private boolean headingZeroed = false;
+
     public SwerveSubsystem() {
-        new Thread(() -> {
-            try {
-                Thread.sleep(1000);
-                zeroHeading();
-            } catch (Exception e) {
+        resetOdometry(new Pose2d());
+    }
+
+    /** All four modules driven with the same voltage and measured as their average. */
+    private CharacterizationMechanism averagedMechanism(ToDoubleFunction<SwerveModule> position,
+            ToDoubleFunction<SwerveModule> velocity, ObjDoubleConsumer<SwerveModule> voltageSetter) {
+        return new CharacterizationMechanism() {
+            @Override
+            public void setVoltage(double volts) {
+                for (SwerveModule module : modules) {
+                    voltageSetter.accept(module, volts);
+                }
+            }
+
+            @Override
+            public double getPosition() {
+                return average(position);
             }
-        }).start();
+
+            @Override
+            public double getVelocity() {
+                return average(velocity);
+            }
+        };
+    }
+
+    private double average(ToDoubleFunction<SwerveModule> getter) {
+        double sum = 0;
+        for (SwerveModule module : modules) {
+            sum += getter.applyAsDouble(module);
+        }
+        return sum / modules.length;
     }
 
     public void zeroHeading() {
@@ -111,13 +189,82 @@ public class SwerveSubsystem extends SubsystemBase
     }
 
     public void resetOdometry(Pose2d pose) {
-        odometer.resetPosition(gyro.getRotation2d(), getSwerveModulePositions(), pose);
+        sampleModules();
+        sampleGyro();
+        odometer.resetPosition(Timer.getFPGATimestamp(), pose, gyroSampleRad, gyroSampleTimestampSeconds,
+                moduleDistances, moduleAngles);
+    }
+
+    /**
+     * Called at {@link OdometryConstants#kOdometryPeriodSeconds} from {@link com.celestial.Robot}. In
+     * simulation, {@link #simulationStep} has to run first so there is something to read.
+     */
+    public void highRatePeriodic() {
+        updateOdometry();
+
+        if (activeCharacterization != null) {
+            activeCharacterization.update(Timer.getFPGATimestamp());
+        }
+    }
+
+    public void updateOdometry() {
+        sampleModules();
+        sampleGyro();
+        odometer.update(Timer.getFPGATimestamp(), gyroSampleRad, gyroSampleTimestampSeconds,
+                moduleDistances, moduleVelocities, moduleAngles,
+                gyro.getWorldLinearAccelX(), gyro.getWorldLinearAccelY());
+    }
+
+    /** When the navX took its latest reading, which only changes once per navX update. */
+    private double getGyroTimestampSeconds() {
+        return navXSimYaw != null ? simGyroTimestampSeconds : gyro.getLastSensorTimestamp() / 1000.0;
+    }
+
+    /**
+     * Reads the heading and its timestamp as one pair. The navX IO thread can land a new sample
+     * between the two reads, which would pair a new timestamp with the old angle, so the timestamp is
+     * checked again afterwards and the read retried if it moved. If it never settles the previous
+     * pair is kept, which odometry treats as no new sample.
+     */
+    private void sampleGyro() {
+        for (int attempt = 0; attempt < OdometryConstants.kGyroReadAttempts; attempt++) {
+            double timestampSeconds = getGyroTimestampSeconds();
+            double headingRad = Math.toRadians(getHeading());
+            if (getGyroTimestampSeconds() == timestampSeconds) {
+                gyroSampleRad = headingRad;
+                gyroSampleTimestampSeconds = timestampSeconds;
+                return;
+            }
+        }
+    }
+
+    private void sampleModules() {
+        for (int i = 0; i < modules.length; i++) {
+            moduleDistances[i] = modules[i].getDrivePosition();
+            moduleVelocities[i] = modules[i].getDriveVelocity();
+            moduleAngles[i] = modules[i].getAbsoluteEncoderRad();
+        }
+    }
+
+    public ChassisSpeeds getRobotRelativeSpeeds() {
+        return DriveConstants.kDriveKinematics.toChassisSpeeds(getSwerveModuleStates());
+    }
+
+    public void driveRobotRelative(ChassisSpeeds speeds) {
+        setModuleStates(DriveConstants.kDriveKinematics.toSwerveModuleStates(speeds));
     }
 
     @Override
     public void periodic() {
-        odometer.update(getRotation2d(), getSwerveModulePositions());
+        if (!headingZeroed && !gyro.isCalibrating()) {
+            zeroHeading();
+            headingZeroed = true;
+            // Odometry was seeded against the old heading, so keep the pose and re-base it on the zeroed gyro
+            resetOdometry(getPose());
+        }
+
         field.setRobotPose(odometer.getPoseMeters());
+        SmartDashboard.putBoolean("Collision Detected", odometer.isCollisionDetected());
         SmartDashboard.putNumber("Robot Heading", getHeading());
         SmartDashboard.putData("Field", field);
 
@@ -131,6 +278,72 @@ public class SwerveSubsystem extends SubsystemBase
         publisher.set(getSwerveModuleStates());
     }
 
+    /** Steps every simulated module and turns the navX to follow the chassis rotation they produce. */
+    public void simulationStep(double dtSeconds) {
+        for (SwerveModule module : modules) {
+            module.simulationStep(dtSeconds);
+        }
+
+        if (navXSimYaw != null) {
+            ChassisSpeeds speeds = DriveConstants.kDriveKinematics.toChassisSpeeds(getSwerveModuleStates());
+            // The navX yaw is clockwise positive, see getHeading()
+            navXSimYaw.set(navXSimYaw.get() - Math.toDegrees(speeds.omegaRadiansPerSecond * dtSeconds));
+            simGyroTimestampSeconds = Timer.getFPGATimestamp();
+        }
+    }
+
+    public void startDriveCharacterization() {
+        startCharacterization(driveCharacterization);
+    }
+
+    public void startRotationCharacterization() {
+        startCharacterization(rotationCharacterization);
+    }
+
+    private void startCharacterization(CharacterizationRoutine routine) {
+        activeCharacterization = routine;
+        routine.start(Timer.getFPGATimestamp());
+    }
+
+    public boolean isCharacterizationFinished() {
+        return activeCharacterization == null || activeCharacterization.isFinished();
+    }
+
+    /** Stops the running routine and, if it completed, fits it and publishes the gains. */
+    public void stopCharacterization() {
+        if (activeCharacterization == null) {
+            return;
+        }
+
+        CharacterizationRoutine routine = activeCharacterization;
+        activeCharacterization = null;
+        boolean completed = routine.isFinished();
+        routine.cancel();
+        stopModules();
+
+        if (!completed) {
+            return;
+        }
+
+        if (routine == driveCharacterization) {
+            publishCharacterization("Drive", CharacterizationFit.forVelocityControl(routine.getLog()));
+        } else {
+            publishCharacterization("Rotation", CharacterizationFit.forPositionControl(routine.getLog()));
+        }
+    }
+
+    private void publishCharacterization(String name, CharacterizationResult result) {
+        String prefix = "SysId/" + name + " ";
+        SmartDashboard.putNumber(prefix + "kS", result.kS());
+        SmartDashboard.putNumber(prefix + "kV", result.kV());
+        SmartDashboard.putNumber(prefix + "kA", result.kA());
+        SmartDashboard.putNumber(prefix + "r2", result.rSquared());
+        SmartDashboard.putNumber(prefix + "Samples", result.sampleCount());
+        // The module controllers output duty cycle, not volts
+        SmartDashboard.putNumber(prefix + "kP", result.kP() / CharacterizationConstants.kNominalVoltage);
+        SmartDashboard.putNumber(prefix + "kD", result.kD() / CharacterizationConstants.kNominalVoltage);
+    }
+
     public void stopModules() {
         frontLeft.stop();
         frontRight.stop();
@@ -0,0 +1,164 @@
+package com.celestial.sysid;
+
+import com.celestial.Constants.CharacterizationConstants;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.controller.LinearQuadraticRegulator;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N2;
+import edu.wpi.first.math.system.plant.LinearSystemId;
+
+/**
+ * Fits V = kS·sgn(v) + kV·v + kA·a to a {@link CharacterizationLog} with ordinary least squares, the
+ * same model the WPILib SysId tool uses, and then suggests feedback gains by running LQR on the
+ * identified plant.
+ */
+public final class CharacterizationFit {
+    private CharacterizationFit() {
+        throw new UnsupportedOperationException("This is a utility class!");
+    }
+
+    /** Fits the log and suggests a kP for a velocity loop, as used by the drive motors. */
+    public static CharacterizationResult forVelocityControl(CharacterizationLog log) {
+        double[] gains = fitFeedforward(log);
+        double kS = gains[0], kV = gains[1], kA = gains[2];
+
+        double kP = Double.NaN;
+        if (kV > 0 && kA > 0) {
+            Matrix<N1, N1> k = new LinearQuadraticRegulator<>(
+                    LinearSystemId.identifyVelocitySystem(kV, kA),
+                    VecBuilder.fill(CharacterizationConstants.kDriveVelocityToleranceMetersPerSecond),
+                    VecBuilder.fill(CharacterizationConstants.kMaxControlEffortVolts),
+                    CharacterizationConstants.kControlLoopPeriodSeconds).getK();
+            kP = k.get(0, 0);
+        }
+
+        return new CharacterizationResult(kS, kV, kA, gains[3], kP, 0, (int) gains[4]);
+    }
+
+    /** Fits the log and suggests kP and kD for a position loop, as used by steering. */
+    public static CharacterizationResult forPositionControl(CharacterizationLog log) {
+        double[] gains = fitFeedforward(log);
+        double kS = gains[0], kV = gains[1], kA = gains[2];
+
+        double kP = Double.NaN;
+        double kD = Double.NaN;
+        if (kV > 0 && kA > 0) {
+            Matrix<N1, N2> k = new LinearQuadraticRegulator<>(
+                    LinearSystemId.identifyPositionSystem(kV, kA),
+                    VecBuilder.fill(
+                            CharacterizationConstants.kRotationPositionToleranceRad,
+                            CharacterizationConstants.kRotationVelocityToleranceRadPerSecond),
+                    VecBuilder.fill(CharacterizationConstants.kMaxControlEffortVolts),
+                    CharacterizationConstants.kControlLoopPeriodSeconds).getK();
+            kP = k.get(0, 0);
+            kD = k.get(0, 1);
+        }
+
+        return new CharacterizationResult(kS, kV, kA, gains[3], kP, kD, (int) gains[4]);
+    }
+
+    /** Returns {kS, kV, kA, r², sample count}. */
+    private static double[] fitFeedforward(CharacterizationLog log) {
+        double[][] normal = new double[3][4];
+        double voltageSum = 0;
+        double voltageSquaredSum = 0;
+        int count = 0;
+
+        for (int i = 1; i < log.size() - 1; i++) {
+            if (!isUsable(log, i)) {
+                continue;
+            }
+
+            double velocity = log.getVelocity(i);
+            double[] row = {Math.signum(velocity), velocity, getAcceleration(log, i)};
+            double volts = getVoltage(log, i);
+
+            for (int r = 0; r < 3; r++) {
+                for (int c = 0; c < 3; c++) {
+                    normal[r][c] += row[r] * row[c];
+                }
+                normal[r][3] += row[r] * volts;
+            }
+            voltageSum += volts;
+            voltageSquaredSum += volts * volts;
+            count++;
+        }
+
+        double[] gains = solve(normal);
+        if (gains == null) {
+            return new double[] {Double.NaN, Double.NaN, Double.NaN, Double.NaN, count};
+        }
+
+        double residualSquaredSum = 0;
+        for (int i = 1; i < log.size() - 1; i++) {
+            if (!isUsable(log, i)) {
+                continue;
+            }
+
+            double velocity = log.getVelocity(i);
+            double predicted = gains[0] * Math.signum(velocity) + gains[1] * velocity
+                    + gains[2] * getAcceleration(log, i);
+            double residual = getVoltage(log, i) - predicted;
+            residualSquaredSum += residual * residual;
+        }
+        double totalSquaredSum = voltageSquaredSum - voltageSum * voltageSum / count;
+
+        return new double[] {gains[0], gains[1], gains[2], 1 - residualSquaredSum / totalSquaredSum, count};
+    }
+
+    /** A sample is usable when it is moving and both neighbours come from the same test. */
+    private static boolean isUsable(CharacterizationLog log, int i) {
+        return log.getSegment(i - 1) == log.getSegment(i)
+                && log.getSegment(i + 1) == log.getSegment(i)
+                && Math.abs(log.getVelocity(i)) > CharacterizationConstants.kMotionThreshold;
+    }
+
+    /** Central difference, so it lines up with the sample rather than lagging half a period. */
+    private static double getAcceleration(CharacterizationLog log, int i) {
+        return (log.getVelocity(i + 1) - log.getVelocity(i - 1))
+                / (log.getTimestamp(i + 1) - log.getTimestamp(i - 1));
+    }
+
+    /** Mean voltage over the same two periods the acceleration is taken across. */
+    private static double getVoltage(CharacterizationLog log, int i) {
+        return 0.5 * (log.getVoltage(i) + log.getVoltage(i + 1));
+    }
+
+    /** Gaussian elimination with partial pivoting on an augmented 3x4 matrix, null if singular. */
+    private static double[] solve(double[][] augmented) {
+        int n = augmented.length;
+        for (int pivot = 0; pivot < n; pivot++) {
+            int best = pivot;
+            for (int r = pivot + 1; r < n; r++) {
+                if (Math.abs(augmented[r][pivot]) > Math.abs(augmented[best][pivot])) {
+                    best = r;
+                }
+            }
+            if (Math.abs(augmented[best][pivot]) < 1E-12) {
+                return null;
+            }
+
+            double[] swap = augmented[pivot];
+            augmented[pivot] = augmented[best];
+            augmented[best] = swap;
+
+            for (int r = pivot + 1; r < n; r++) {
+                double factor = augmented[r][pivot] / augmented[pivot][pivot];
+                for (int c = pivot; c <= n; c++) {
+                    augmented[r][c] -= factor * augmented[pivot][c];
+                }
+            }
+        }
+
+        double[] solution = new double[n];
+        for (int r = n - 1; r >= 0; r--) {
+            double sum = augmented[r][n];
+            for (int c = r + 1; c < n; c++) {
+                sum -= augmented[r][c] * solution[c];
+            }
+            solution[r] = sum / augmented[r][r];
+        }
+        return solution;
+    }
+}
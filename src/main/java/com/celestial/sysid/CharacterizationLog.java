@@ -0,0 +1,75 @@
+package com.celestial.sysid;
+
+/**
+ * Fixed-size sample buffers for a characterization run. Everything is allocated up front so
+ * recording from the high-rate loop never allocates; samples past the capacity are dropped.
+ */
+public class CharacterizationLog {
+    private final double[] timestamps;
+    private final double[] voltages;
+    private final double[] positions;
+    private final double[] velocities;
+    private final int[] segments;
+
+    private int size;
+
+    public CharacterizationLog(int capacity) {
+        timestamps = new double[capacity];
+        voltages = new double[capacity];
+        positions = new double[capacity];
+        velocities = new double[capacity];
+        segments = new int[capacity];
+    }
+
+    /**
+     * Stores one sample.
+     *
+     * @param segment which test the sample belongs to, so the fit never differentiates across tests
+     * @return false if the buffer was already full
+     */
+    public boolean record(int segment, double timestampSeconds, double volts, double position, double velocity) {
+        if (size == timestamps.length) {
+            return false;
+        }
+
+        segments[size] = segment;
+        timestamps[size] = timestampSeconds;
+        voltages[size] = volts;
+        positions[size] = position;
+        velocities[size] = velocity;
+        size++;
+        return true;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return timestamps.length;
+    }
+
+    public int getSegment(int index) {
+        return segments[index];
+    }
+
+    public double getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public double getVoltage(int index) {
+        return voltages[index];
+    }
+
+    public double getPosition(int index) {
+        return positions[index];
+    }
+
+    public double getVelocity(int index) {
+        return velocities[index];
+    }
+}
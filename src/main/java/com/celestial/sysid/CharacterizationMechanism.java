@@ -0,0 +1,12 @@
+package com.celestial.sysid;
+
+/** Whatever a {@link CharacterizationRoutine} drives and measures, e.g. all four drive motors. */
+public interface CharacterizationMechanism {
+    void setVoltage(double volts);
+
+    /** Position in mechanism units (meters for drive, radians for steering). */
+    double getPosition();
+
+    /** Velocity in mechanism units per second. */
+    double getVelocity();
+}
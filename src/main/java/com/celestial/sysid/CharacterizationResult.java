@@ -0,0 +1,24 @@
+package com.celestial.sysid;
+
+/**
+ * Output of {@link CharacterizationFit}. Feedforward gains are in volts per mechanism unit; the
+ * feedback gains are in volts per unit of error, divide by the battery voltage to use them with a
+ * duty cycle controller. Gains that could not be computed are NaN.
+ *
+ * @param kS volts to overcome static friction
+ * @param kV volts per unit per second
+ * @param kA volts per unit per second squared
+ * @param rSquared how much of the voltage the model explains, 1 is a perfect fit
+ * @param kP suggested proportional gain
+ * @param kD suggested derivative gain, 0 for velocity control
+ * @param sampleCount samples used by the fit
+ */
+public record CharacterizationResult(
+        double kS,
+        double kV,
+        double kA,
+        double rSquared,
+        double kP,
+        double kD,
+        int sampleCount) {
+}
@@ -0,0 +1,117 @@
+package com.celestial.sysid;
+
+import com.celestial.Constants.CharacterizationConstants;
+import com.celestial.Constants.OdometryConstants;
+
+/**
+ * Runs the four standard SysId tests back to back on one mechanism: quasistatic forward and
+ * reverse, then dynamic forward and reverse, with the mechanism at rest in between. {@link #update}
+ * is meant to be called from the high-rate loop, where it sets the voltage for the current test and
+ * records voltage, position and velocity into a preallocated {@link CharacterizationLog}.
+ *
+ * <p>The drivetrain will travel a few meters each way during the drive tests, so give it room.
+ */
+public class CharacterizationRoutine {
+    private enum Test {
+        QUASISTATIC_FORWARD(true, 1.0),
+        QUASISTATIC_REVERSE(true, -1.0),
+        DYNAMIC_FORWARD(false, 1.0),
+        DYNAMIC_REVERSE(false, -1.0);
+
+        private final boolean quasistatic;
+        private final double direction;
+
+        Test(boolean quasistatic, double direction) {
+            this.quasistatic = quasistatic;
+            this.direction = direction;
+        }
+
+        private double getDuration() {
+            return quasistatic
+                    ? CharacterizationConstants.kQuasistaticDurationSeconds
+                    : CharacterizationConstants.kDynamicDurationSeconds;
+        }
+
+        private double getVoltage(double elapsedSeconds) {
+            return direction * (quasistatic
+                    ? CharacterizationConstants.kQuasistaticRampVoltsPerSecond * elapsedSeconds
+                    : CharacterizationConstants.kDynamicStepVolts);
+        }
+    }
+
+    private static final Test[] TESTS = Test.values();
+
+    private final CharacterizationMechanism mechanism;
+    private final CharacterizationLog log;
+
+    private int testIndex = TESTS.length;
+    private boolean resting;
+    private double testStartSeconds;
+    private double appliedVolts;
+
+    public CharacterizationRoutine(CharacterizationMechanism mechanism) {
+        this.mechanism = mechanism;
+
+        double totalTestSeconds = 2 * CharacterizationConstants.kQuasistaticDurationSeconds
+                + 2 * CharacterizationConstants.kDynamicDurationSeconds;
+        // One spare sample per test for timing jitter
+        log = new CharacterizationLog(
+                (int) Math.ceil(totalTestSeconds / OdometryConstants.kOdometryPeriodSeconds) + 2 * TESTS.length);
+    }
+
+    public void start(double timestampSeconds) {
+        log.clear();
+        testIndex = 0;
+        resting = false;
+        testStartSeconds = timestampSeconds;
+        appliedVolts = 0;
+    }
+
+    /** Advances the routine to {@code timestampSeconds}, recording a sample while a test is running. */
+    public void update(double timestampSeconds) {
+        if (isFinished()) {
+            return;
+        }
+
+        double elapsed = timestampSeconds - testStartSeconds;
+        if (resting) {
+            if (elapsed < CharacterizationConstants.kRestSeconds) {
+                mechanism.setVoltage(0);
+                return;
+            }
+            resting = false;
+            testStartSeconds = timestampSeconds;
+            elapsed = 0;
+        }
+
+        Test test = TESTS[testIndex];
+
+        // The measured state is the result of the voltage applied since the last sample
+        log.record(testIndex, timestampSeconds, appliedVolts, mechanism.getPosition(), mechanism.getVelocity());
+
+        if (elapsed >= test.getDuration()) {
+            testIndex++;
+            resting = true;
+            testStartSeconds = timestampSeconds;
+            appliedVolts = 0;
+        } else {
+            appliedVolts = test.getVoltage(elapsed);
+        }
+        mechanism.setVoltage(appliedVolts);
+    }
+
+    /** Stops driving the mechanism, keeping whatever was recorded so far. */
+    public void cancel() {
+        testIndex = TESTS.length;
+        appliedVolts = 0;
+        mechanism.setVoltage(0);
+    }
+
+    public boolean isFinished() {
+        return testIndex >= TESTS.length;
+    }
+
+    public CharacterizationLog getLog() {
+        return log;
+    }
+}
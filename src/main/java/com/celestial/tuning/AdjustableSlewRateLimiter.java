@@ -0,0 +1,36 @@
+package com.celestial.tuning;
+
+import edu.wpi.first.math.MathSharedStore;
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Same behaviour as WPILib's {@link edu.wpi.first.math.filter.SlewRateLimiter}, but the rate can be
+ * changed in place so a tuning change doesn't need a new limiter.
+ */
+public class AdjustableSlewRateLimiter {
+    private double rateLimit;
+    private double prevVal;
+    private double prevTime;
+
+    public AdjustableSlewRateLimiter(double rateLimit) {
+        this.rateLimit = rateLimit;
+        prevTime = MathSharedStore.getTimestamp();
+    }
+
+    public void setRateLimit(double rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    public double calculate(double input) {
+        double currentTime = MathSharedStore.getTimestamp();
+        double maxChange = rateLimit * (currentTime - prevTime);
+        prevVal += MathUtil.clamp(input - prevVal, -maxChange, maxChange);
+        prevTime = currentTime;
+        return prevVal;
+    }
+
+    public void reset(double value) {
+        prevVal = value;
+        prevTime = MathSharedStore.getTimestamp();
+    }
+}
@@ -0,0 +1,193 @@
+package com.celestial.tuning;
+
+import com.celestial.Constants.DriveConstants;
+import com.celestial.Constants.ModuleConstants;
+import com.celestial.Constants.OIConstants;
+import edu.wpi.first.networktables.DoubleEntry;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.DoublePredicate;
+
+/**
+ * Registry of the gains and limits that can be changed from the dashboard without a redeploy.
+ *
+ * <p>Every value lives under the {@code Tuning} NetworkTables table, seeded from {@link
+ * com.celestial.Constants}. NetworkTables listener callbacks rebuild a {@link TuningSnapshot} and
+ * swap it in through a single volatile field, so the control loop only ever does one field read per
+ * cycle and never touches NetworkTables itself. Work that has to talk to the SparkMaxes is handed to
+ * {@link #onChange} consumers, which run on a background thread so a slow CAN configure can't stall
+ * either the NetworkTables thread or the main loop.
+ *
+ * <p>Each value is checked on its own. One that the robot can't use, such as a negative gain, is
+ * reported and replaced by the last good value for that field only, so a typo in one box doesn't
+ * hold back the others.
+ */
+public final class TunableParameters implements AutoCloseable {
+    private static TunableParameters defaultInstance;
+
+    private final NetworkTableInstance inst;
+    private final int[] listenerHandles;
+
+    private final DoubleEntry rotationP;
+    private final DoubleEntry rotationD;
+    private final DoubleEntry driveAccelerationLimit;
+    private final DoubleEntry turningAccelerationLimit;
+    private final DoubleEntry deadband;
+    private final DoubleEntry driveRampRate;
+
+    private final List<Consumer<TuningSnapshot>> changeConsumers = new CopyOnWriteArrayList<>();
+    private final ExecutorService pushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TunableParameters push");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile TuningSnapshot snapshot;
+
+    // Only touched from the push thread
+    private TuningSnapshot lastPushed;
+
+    /** Returns the registry backed by the default NetworkTables instance, creating it on first use. */
+    public static synchronized TunableParameters getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = new TunableParameters(NetworkTableInstance.getDefault());
+        }
+        return defaultInstance;
+    }
+
+    public TunableParameters(NetworkTableInstance inst) {
+        this.inst = inst;
+        NetworkTable table = inst.getTable("Tuning");
+        TuningSnapshot defaults = new TuningSnapshot(
+                ModuleConstants.kPRotation,
+                ModuleConstants.kDRotation,
+                DriveConstants.kTeleDriveMaxAccelerationUnitsPerSecond,
+                DriveConstants.kTeleDriveMaxAngularAccelerationUnitsPerSecond,
+                OIConstants.kDeadband,
+                ModuleConstants.kDriveOpenLoopRampRateSeconds);
+
+        rotationP = createEntry(table, "Rotation kP", defaults.rotationP());
+        rotationD = createEntry(table, "Rotation kD", defaults.rotationD());
+        driveAccelerationLimit = createEntry(table, "Drive Acceleration Limit", defaults.driveAccelerationLimit());
+        turningAccelerationLimit = createEntry(table, "Turning Acceleration Limit",
+                defaults.turningAccelerationLimit());
+        deadband = createEntry(table, "Deadband", defaults.deadband());
+        driveRampRate = createEntry(table, "Drive Ramp Rate", defaults.driveRampRateSeconds());
+
+        // A value left over on the dashboard from an earlier session can be bad too
+        snapshot = readSnapshot(defaults);
+        lastPushed = snapshot;
+
+        // Only listen once every entry exists, the callbacks read all of them
+        DoubleEntry[] entries = {
+                rotationP, rotationD, driveAccelerationLimit, turningAccelerationLimit, deadband, driveRampRate};
+        listenerHandles = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            listenerHandles[i] = inst.addListener(entries[i], EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+                    event -> refresh());
+        }
+    }
+
+    /** The latest values. Cheap enough to call every loop. */
+    public TuningSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Runs {@code consumer} on the background push thread whenever the values change. Bursts of
+     * changes are coalesced, so the consumer only ever sees the newest snapshot.
+     */
+    public void onChange(Consumer<TuningSnapshot> consumer) {
+        changeConsumers.add(consumer);
+    }
+
+    /** Stops calling a consumer passed to {@link #onChange}. */
+    public void removeOnChange(Consumer<TuningSnapshot> consumer) {
+        changeConsumers.remove(consumer);
+    }
+
+    private static DoubleEntry createEntry(NetworkTable table, String key, double defaultValue) {
+        DoubleEntry entry = table.getDoubleTopic(key).getEntry(defaultValue);
+        entry.setDefault(defaultValue);
+        return entry;
+    }
+
+    private TuningSnapshot readSnapshot(TuningSnapshot lastGood) {
+        return new TuningSnapshot(
+                readValue(rotationP, lastGood.rotationP(), TunableParameters::isNonNegative),
+                readValue(rotationD, lastGood.rotationD(), TunableParameters::isNonNegative),
+                readValue(driveAccelerationLimit, lastGood.driveAccelerationLimit(), TunableParameters::isPositive),
+                readValue(turningAccelerationLimit, lastGood.turningAccelerationLimit(),
+                        TunableParameters::isPositive),
+                readValue(deadband, lastGood.deadband(), value -> isNonNegative(value) && value < 1),
+                readValue(driveRampRate, lastGood.driveRampRateSeconds(), TunableParameters::isNonNegative));
+    }
+
+    private static double readValue(DoubleEntry entry, double lastGood, DoublePredicate isValid) {
+        double value = entry.get();
+        if (isValid.test(value)) {
+            return value;
+        }
+
+        DriverStation.reportWarning("Ignoring invalid tuning value " + entry.getTopic().getName() + " = " + value
+                + ", keeping " + lastGood, false);
+        return lastGood;
+    }
+
+    private static boolean isNonNegative(double value) {
+        return Double.isFinite(value) && value >= 0;
+    }
+
+    private static boolean isPositive(double value) {
+        return Double.isFinite(value) && value > 0;
+    }
+
+    /** Called on the NetworkTables listener thread. */
+    private synchronized void refresh() {
+        // A callback already in flight when close() ran
+        if (pushExecutor.isShutdown()) {
+            return;
+        }
+
+        TuningSnapshot next = readSnapshot(snapshot);
+        if (next.equals(snapshot)) {
+            return;
+        }
+
+        snapshot = next;
+        pushExecutor.execute(this::pushLatest);
+    }
+
+    /**
+     * Removes the NetworkTables listeners and stops the push thread once any push already queued has
+     * run. The entries themselves stay published.
+     */
+    @Override
+    public synchronized void close() {
+        for (int handle : listenerHandles) {
+            inst.removeListener(handle);
+        }
+        pushExecutor.shutdown();
+    }
+
+    private void pushLatest() {
+        TuningSnapshot latest = snapshot;
+        if (latest == lastPushed) {
+            return;
+        }
+
+        lastPushed = latest;
+        for (Consumer<TuningSnapshot> consumer : changeConsumers) {
+            consumer.accept(latest);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.celestial.tuning;
+
+/**
+ * One consistent set of live-tunable values. Snapshots are never modified, so the control loop can
+ * hold on to one for a whole cycle and compare it by reference to spot a change. Every value has
+ * already been validated by {@link TunableParameters}.
+ *
+ * @param rotationP module steering kP
+ * @param rotationD module steering kD
+ * @param driveAccelerationLimit teleop translation slew rate, in joystick units per second
+ * @param turningAccelerationLimit teleop rotation slew rate, in joystick units per second
+ * @param deadband joystick deadband
+ * @param driveRampRateSeconds drive SparkMax open loop ramp, seconds from 0 to full output
+ */
+public record TuningSnapshot(
+        double rotationP,
+        double rotationD,
+        double driveAccelerationLimit,
+        double turningAccelerationLimit,
+        double deadband,
+        double driveRampRateSeconds) {
+}
@@ -0,0 +1,350 @@
+package com.celestial;
+
+import com.celestial.Constants.CharacterizationConstants;
+import com.celestial.Constants.ModuleConstants;
+import com.celestial.Constants.OIConstants;
+import com.celestial.Constants.OdometryConstants;
+import com.celestial.Constants.OperatorConstants;
+import com.celestial.commands.Autos;
+import com.celestial.subsystems.SwerveSubsystem;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.controller.LinearQuadraticRegulator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.system.plant.LinearSystemId;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.XboxController;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives the whole robot headless under the HAL simulator. {@link Robot} is constructed and run on
+ * its own thread, so the scripted stick inputs reach {@link com.celestial.commands.SwerveJoystickCommand}
+ * through the real {@code TimedRobot} callbacks, including the high-rate odometry callback, and time
+ * only moves when the test steps it. The script runs once and each test checks one aspect of what
+ * was recorded. After the drive script, the drive characterization command runs to completion the
+ * way the dashboard button would start it.
+ *
+ * <p>The loop time and allocation budgets in {@code performance-budgets.properties} are measured
+ * afterwards with the robot thread stopped, calling the same subsystem methods from the test thread
+ * so every call can be metered on its own with the simulated hardware left outside the meter.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class RobotSimulationTest
+{
+    private static final double LOOP_PERIOD = 0.02;
+    private static final int HIGH_RATE_STEPS_PER_LOOP =
+            (int) Math.round(LOOP_PERIOD / OdometryConstants.kOdometryPeriodSeconds);
+    private static final int PORT = OperatorConstants.DRIVER_CONTROLLER_PORT;
+
+    private record Step(double seconds, double forward, double strafe, double rotation) {}
+
+    private static final int FORWARD = 1;
+    private static final int SETTLE = 2;
+    private static final int SPIN = 3;
+    private static final Step[] SCRIPT = {
+            new Step(1.0, 0, 0, 0),
+            new Step(1.5, 0.5, 0, 0),
+            new Step(1.0, 0, 0, 0),
+            new Step(1.0, 0, 0, 0.3),
+            new Step(1.0, 0, 0, 0),
+    };
+
+    // The whole routine is about 14 s, this leaves room without hanging the build if it never ends
+    private static final double CHARACTERIZATION_TIMEOUT_SECONDS = 30.0;
+
+    // Budgets are measured while driving and spinning at once, so every odometry window does real work
+    private static final Step MEASURE = new Step(0, 0.4, 0.2, 0.3);
+    private static final int WARMUP_CYCLES = 250;
+    private static final int MEASURED_CYCLES = 500;
+    private static final double GATE_PERCENTILE = 0.99;
+
+    private final Properties budgets = new Properties();
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Robot robot;
+    private Thread robotThread;
+    private SwerveSubsystem swerve;
+
+    private final Pose2d[] poseAtStepEnd = new Pose2d[SCRIPT.length];
+    private SwerveModuleState[] cruiseStates;
+    private boolean characterizationFinished;
+
+    private final long[] schedulerNanos = new long[MEASURED_CYCLES];
+    private final long[] highRateNanos = new long[MEASURED_CYCLES * HIGH_RATE_STEPS_PER_LOOP];
+    private long schedulerAllocatedBytes;
+    private long highRateAllocatedBytes;
+    private Pose2d poseBeforeMeasuring;
+    private Pose2d poseAfterMeasuring;
+
+    @BeforeAll
+    void runScript() throws IOException, InterruptedException
+    {
+        try (InputStream in = getClass().getResourceAsStream("performance-budgets.properties"))
+        {
+            assertNotNull(in, "performance-budgets.properties is missing");
+            budgets.load(in);
+        }
+
+        assertTrue(HAL.initialize(500, 0));
+        SimHooks.pauseTiming();
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.setAutonomous(false);
+        DriverStationSim.setTest(false);
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.setJoystickAxisCount(PORT, 6);
+        DriverStationSim.setJoystickButtonCount(PORT, 10);
+        DriverStationSim.notifyNewData();
+
+        robot = new Robot();
+        swerve = robot.getRobotContainer().getSwerveSubsystem();
+        robotThread = new Thread(robot::startCompetition, "Robot");
+        robotThread.start();
+        // Wait for the robot to reach its main loop before time starts moving
+        SimHooks.stepTiming(0.0);
+
+        for (int i = 0; i < SCRIPT.length; i++)
+        {
+            setSticks(SCRIPT[i]);
+            SimHooks.stepTiming(SCRIPT[i].seconds());
+
+            poseAtStepEnd[i] = swerve.getPose();
+            if (i == FORWARD)
+            {
+                cruiseStates = swerve.getSwerveModuleStates();
+            }
+        }
+
+        Command characterization = Autos.characterizeDrive(swerve);
+        characterization.schedule();
+        for (double t = 0; t < CHARACTERIZATION_TIMEOUT_SECONDS && characterization.isScheduled(); t += LOOP_PERIOD)
+        {
+            SimHooks.stepTiming(LOOP_PERIOD);
+        }
+        characterizationFinished = !characterization.isScheduled();
+
+        robot.endCompetition();
+        robotThread.join();
+
+        measureBudgets();
+    }
+
+    @AfterAll
+    void tearDown()
+    {
+        CommandScheduler.getInstance().cancelAll();
+        robot.close();
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.notifyNewData();
+        SimHooks.resumeTiming();
+    }
+
+    private static void setSticks(Step step)
+    {
+        DriverStationSim.setJoystickAxis(PORT, OIConstants.kDriverYAxis, step.forward());
+        DriverStationSim.setJoystickAxis(PORT, OIConstants.kDriverXAxis, step.strafe());
+        DriverStationSim.setJoystickAxis(PORT, OIConstants.kDriverRotAxis, step.rotation());
+        // Released bumper means field oriented
+        DriverStationSim.setJoystickButton(PORT, XboxController.Button.kLeftBumper.value, false);
+        DriverStationSim.notifyNewData();
+    }
+
+    /**
+     * Runs 20 ms cycles by hand in the order {@link Robot} runs them: every high-rate callback first
+     * steps the simulated hardware, which also gives the navX a fresh sample so each call closes an
+     * odometry window, then the scheduler runs. Only the on-robot work is timed and metered.
+     */
+    private void measureBudgets()
+    {
+        setSticks(MEASURE);
+        long threadId = Thread.currentThread().getId();
+        int highRateCount = 0;
+
+        for (int cycle = 0; cycle < WARMUP_CYCLES + MEASURED_CYCLES; cycle++)
+        {
+            boolean measured = cycle >= WARMUP_CYCLES;
+            if (cycle == WARMUP_CYCLES)
+            {
+                poseBeforeMeasuring = swerve.getPose();
+            }
+
+            for (int i = 0; i < HIGH_RATE_STEPS_PER_LOOP; i++)
+            {
+                SimHooks.stepTiming(OdometryConstants.kOdometryPeriodSeconds);
+                swerve.simulationStep(OdometryConstants.kOdometryPeriodSeconds);
+
+                long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                swerve.highRatePeriodic();
+                long elapsed = System.nanoTime() - start;
+                long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+                if (measured)
+                {
+                    highRateNanos[highRateCount++] = elapsed;
+                    highRateAllocatedBytes += allocated;
+                }
+            }
+
+            // TimedRobot does this at the top of every loop
+            DriverStation.refreshData();
+
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            CommandScheduler.getInstance().run();
+            long elapsed = System.nanoTime() - start;
+            long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+            if (measured)
+            {
+                schedulerNanos[cycle - WARMUP_CYCLES] = elapsed;
+                schedulerAllocatedBytes += allocated;
+            }
+        }
+
+        poseAfterMeasuring = swerve.getPose();
+    }
+
+    private double budget(String key)
+    {
+        String value = budgets.getProperty(key);
+        assertNotNull(value, "No budget for " + key);
+        return Double.parseDouble(value);
+    }
+
+    private static double percentileMicros(long[] nanos, double percentile)
+    {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1);
+        return sorted[index] / 1000.0;
+    }
+
+    private static double maxMicros(long[] nanos)
+    {
+        return Arrays.stream(nanos).max().orElse(0) / 1000.0;
+    }
+
+    @Test
+    @DisplayName("Driving forward should point every module forward at the commanded speed")
+    void forwardDriveCommandsModules()
+    {
+        double commandedSpeed = SCRIPT[FORWARD].forward() * Constants.DriveConstants.kTeleDriveMaxSpeedMetersPerSecond;
+
+        for (SwerveModuleState state : cruiseStates)
+        {
+            assertEquals(commandedSpeed, state.speedMetersPerSecond, 0.4, "Module speed " + state);
+            assertEquals(0.0, state.angle.getDegrees(), 5.0, "Module angle " + state);
+        }
+    }
+
+    @Test
+    @DisplayName("Pose should follow the script: forward, stop, then spin on the spot")
+    void poseFollowsScript()
+    {
+        Pose2d settled = poseAtStepEnd[SETTLE];
+        assertTrue(settled.getX() > 1.0 && settled.getX() < 3.5, "Drove to " + settled);
+        assertEquals(0.0, settled.getY(), 0.15, "Drifted sideways to " + settled);
+        assertEquals(0.0, settled.getRotation().getDegrees(), 5.0, "Turned while driving straight " + settled);
+
+        Pose2d spun = poseAtStepEnd[SPIN];
+        double turnedDegrees = spun.getRotation().minus(settled.getRotation()).getDegrees();
+        assertTrue(turnedDegrees > 30 && turnedDegrees < 180, "Turned " + turnedDegrees + " degrees");
+        assertTrue(spun.getTranslation().getDistance(settled.getTranslation()) < 0.3, "Moved while spinning to " + spun);
+
+        Pose2d end = poseAtStepEnd[SCRIPT.length - 1];
+        assertEquals(spun.getRotation().getDegrees(), end.getRotation().getDegrees(), 10.0, "Kept turning after release");
+    }
+
+    @Test
+    @DisplayName("Drive characterization should run to completion and publish gains for the four modules")
+    void driveCharacterizationPublishesGains()
+    {
+        assertTrue(characterizationFinished, "Characterization did not finish");
+
+        double samples = SmartDashboard.getNumber("SysId/Drive Samples", 0);
+        double kV = SmartDashboard.getNumber("SysId/Drive kV", Double.NaN);
+        double kA = SmartDashboard.getNumber("SysId/Drive kA", Double.NaN);
+        double kP = SmartDashboard.getNumber("SysId/Drive kP", Double.NaN);
+        assertTrue(samples > 0, "Nothing was published");
+        assertTrue(SmartDashboard.getNumber("SysId/Drive r2", 0) > 0.99);
+
+        // Every simulated module has the same model, so their average should match one of them
+        DCMotor neo = DCMotor.getNEO(1);
+        double gearing = 1 / ModuleConstants.kDriveMotorGearRatio;
+        double expectedKv = gearing / (neo.KvRadPerSecPerVolt * ModuleConstants.kWheelDiamater / 2);
+        assertEquals(expectedKv, kV, expectedKv * 0.05);
+
+        // The fit suggests kP in volts per m/s, the module controllers take duty cycle
+        double voltsKp = new LinearQuadraticRegulator<>(
+                LinearSystemId.identifyVelocitySystem(kV, kA),
+                VecBuilder.fill(CharacterizationConstants.kDriveVelocityToleranceMetersPerSecond),
+                VecBuilder.fill(CharacterizationConstants.kMaxControlEffortVolts),
+                CharacterizationConstants.kControlLoopPeriodSeconds).getK().get(0, 0);
+        assertEquals(voltsKp / CharacterizationConstants.kNominalVoltage, kP, Math.abs(kP) * 1E-6);
+        assertEquals(0.0, SmartDashboard.getNumber("SysId/Drive kD", Double.NaN));
+    }
+
+    @Test
+    @DisplayName("Budgets should be measured on odometry updates that actually moved the pose")
+    void measuredOdometryDidWork()
+    {
+        double travelled = poseAfterMeasuring.getTranslation().getDistance(poseBeforeMeasuring.getTranslation());
+        double turnedDegrees = Math.abs(
+                poseAfterMeasuring.getRotation().minus(poseBeforeMeasuring.getRotation()).getDegrees());
+
+        assertTrue(travelled > 0.5, "Pose only moved " + travelled + " m while measuring");
+        assertTrue(turnedDegrees > 10, "Pose only turned " + turnedDegrees + " degrees while measuring");
+    }
+
+    @Test
+    @DisplayName("Loop times should stay inside the budgets")
+    void loopTimesWithinBudget()
+    {
+        double schedulerMicros = percentileMicros(schedulerNanos, GATE_PERCENTILE);
+        double highRateMicros = percentileMicros(highRateNanos, GATE_PERCENTILE);
+
+        // A single GC pause or preemption can land in any one sample, so the maximum is only reported
+        System.out.printf("Scheduler cycle: p99 %.1f us, max %.1f us%n", schedulerMicros, maxMicros(schedulerNanos));
+        System.out.printf("High-rate cycle: p99 %.1f us, max %.1f us%n", highRateMicros, maxMicros(highRateNanos));
+
+        assertTrue(schedulerMicros <= budget("scheduler.p99CycleMicros"),
+                "99th percentile scheduler cycle took " + schedulerMicros + " us");
+        assertTrue(highRateMicros <= budget("highRate.p99CycleMicros"),
+                "99th percentile high-rate cycle took " + highRateMicros + " us");
+    }
+
+    @Test
+    @DisplayName("Allocations per cycle should stay inside the budgets")
+    void allocationsWithinBudget()
+    {
+        double schedulerMean = (double) schedulerAllocatedBytes / schedulerNanos.length;
+        double highRateMean = (double) highRateAllocatedBytes / highRateNanos.length;
+
+        System.out.printf("Mean allocated: scheduler %.0f B, high-rate %.1f B%n", schedulerMean, highRateMean);
+
+        assertTrue(schedulerMean <= budget("scheduler.maxMeanAllocatedBytes"),
+                "Scheduler cycles allocated " + schedulerMean + " bytes on average");
+        assertTrue(highRateMean <= budget("highRate.maxMeanAllocatedBytes"),
+                "High-rate cycles allocated " + highRateMean + " bytes on average");
+    }
+}
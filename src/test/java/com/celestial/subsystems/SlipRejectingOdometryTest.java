@@ -0,0 +1,297 @@
+package com.celestial.subsystems;
+
+import com.celestial.Constants.DriveConstants;
+import com.celestial.Constants.OdometryConstants;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlipRejectingOdometryTest
+{
+    private static final int MODULES = DriveConstants.kModuleTranslations.length;
+
+    // The replay is built on a 1 ms grid so each sensor can run on its own clock
+    private static final double TICK = 0.001;
+    private static final int LOOP_TICKS = (int) Math.round(OdometryConstants.kOdometryPeriodSeconds / TICK);
+    private static final int GYRO_TICKS = 1000 / OdometryConstants.kNavXUpdateRateHz;
+    // The RIO reads the sensors half way between module 1 and module 2 sending their frames
+    private static final int READ_PHASE_TICKS = 2;
+
+    // Field-relative drive with a constant spin on top
+    private static final double SPIN_RADIANS_PER_SECOND = 2.5;
+
+    // Module 2 spins up on the carpet between these times
+    private static final double SLIP_START = 2.0;
+    private static final double SLIP_END = 3.0;
+    private static final double SLIP_EXTRA_METERS_PER_SECOND = 2.0;
+
+    // The robot is hit and module 1 skips while it bounces
+    private static final double COLLISION_START = 5.0;
+    private static final double COLLISION_END = 5.1;
+    private static final double COLLISION_ACCEL_G = 2.5;
+    private static final double COLLISION_EXTRA_METERS_PER_SECOND = 3.75;
+
+    // The navX goes quiet for this long in the outage replay
+    private static final double GYRO_OUTAGE_START = 3.0;
+    private static final double GYRO_OUTAGE_END = 4.0;
+
+    private static final double[] INITIAL_ANGLES = moduleAngles(fieldSpeedsAt(0.0));
+
+    /** One odometry loop read: the latest frame from every sensor and where the robot really was. */
+    private record Sample(double time, double gyroRad, double gyroTimestamp, double[] distances,
+                          double[] velocities, double[] angles, double accelXG, double accelYG, Pose2d truePose) {}
+
+    private static ChassisSpeeds fieldSpeedsAt(double t)
+    {
+        return new ChassisSpeeds(2.0 + 0.5 * Math.sin(0.7 * t), 0.8 * Math.sin(0.5 * t), SPIN_RADIANS_PER_SECOND);
+    }
+
+    private static double[] moduleAngles(ChassisSpeeds speeds)
+    {
+        SwerveModuleState[] states = DriveConstants.kDriveKinematics.toSwerveModuleStates(speeds);
+        double[] angles = new double[MODULES];
+        for (int i = 0; i < MODULES; i++)
+        {
+            angles[i] = states[i].angle.getRadians();
+        }
+        return angles;
+    }
+
+    /**
+     * Builds a replay of a drive that strafes while spinning. Module i sends its encoder frame
+     * i ms after module 0, the navX samples at its configured rate, and the RIO reads whatever
+     * arrived last, so most reads hold a mix of fresh and stale values.
+     */
+    private static List<Sample> recordReplay(double seconds, boolean injectFaults, boolean dropGyro)
+    {
+        List<Sample> replay = new ArrayList<>();
+        Pose2d truePose = new Pose2d();
+        double[] trueDistances = new double[MODULES];
+        double[] faultDistances = new double[MODULES];
+
+        double[] frameDistances = new double[MODULES];
+        double[] frameVelocities = new double[MODULES];
+        double gyroRad = 0.0;
+        double gyroTimestamp = 0.0;
+
+        int ticks = (int) Math.round(seconds / TICK);
+        for (int tick = 1; tick <= ticks; tick++)
+        {
+            double t = tick * TICK;
+            ChassisSpeeds speeds = ChassisSpeeds.fromFieldRelativeSpeeds(fieldSpeedsAt(t), truePose.getRotation());
+            SwerveModuleState[] states = DriveConstants.kDriveKinematics.toSwerveModuleStates(speeds);
+
+            truePose = truePose.exp(new Twist2d(
+                    speeds.vxMetersPerSecond * TICK,
+                    speeds.vyMetersPerSecond * TICK,
+                    speeds.omegaRadiansPerSecond * TICK));
+
+            double[] faultVelocities = new double[MODULES];
+            double accelG = 0.0;
+            if (injectFaults)
+            {
+                if (t >= SLIP_START && t < SLIP_END)
+                {
+                    faultVelocities[2] = SLIP_EXTRA_METERS_PER_SECOND;
+                }
+                if (t >= COLLISION_START && t < COLLISION_END)
+                {
+                    faultVelocities[1] = COLLISION_EXTRA_METERS_PER_SECOND;
+                    accelG = COLLISION_ACCEL_G;
+                }
+            }
+
+            double[] angles = new double[MODULES];
+            for (int i = 0; i < MODULES; i++)
+            {
+                trueDistances[i] += states[i].speedMetersPerSecond * TICK;
+                faultDistances[i] += faultVelocities[i] * TICK;
+                angles[i] = states[i].angle.getRadians();
+
+                if ((tick - i) % LOOP_TICKS == 0)
+                {
+                    frameDistances[i] = trueDistances[i] + faultDistances[i];
+                    frameVelocities[i] = states[i].speedMetersPerSecond + faultVelocities[i];
+                }
+            }
+
+            boolean gyroDown = dropGyro && t >= GYRO_OUTAGE_START && t < GYRO_OUTAGE_END;
+            if (tick % GYRO_TICKS == 0 && !gyroDown)
+            {
+                gyroRad = truePose.getRotation().getRadians();
+                gyroTimestamp = t;
+            }
+
+            if (tick % LOOP_TICKS == READ_PHASE_TICKS)
+            {
+                replay.add(new Sample(t, gyroRad, gyroTimestamp, frameDistances.clone(), frameVelocities.clone(),
+                        angles, 0.0, accelG, truePose));
+            }
+        }
+
+        return replay;
+    }
+
+    private static SlipRejectingOdometry newOdometry()
+    {
+        SlipRejectingOdometry odometry = new SlipRejectingOdometry(
+                DriveConstants.kModuleTranslations,
+                1.0 / OdometryConstants.kNavXUpdateRateHz,
+                OdometryConstants.kGyroTimeoutSeconds,
+                OdometryConstants.kSlipToleranceMetersPerSecond,
+                OdometryConstants.kSlipToleranceRatio,
+                OdometryConstants.kCollisionAccelThresholdG,
+                OdometryConstants.kCollisionHoldSeconds,
+                OdometryConstants.kCollisionToleranceScale);
+        odometry.resetPosition(0.0, new Pose2d(), 0.0, 0.0, new double[MODULES], INITIAL_ANGLES);
+        return odometry;
+    }
+
+    private static void update(SlipRejectingOdometry odometry, Sample sample)
+    {
+        odometry.update(sample.time(), sample.gyroRad(), sample.gyroTimestamp(), sample.distances(),
+                sample.velocities(), sample.angles(), sample.accelXG(), sample.accelYG());
+    }
+
+    private static double replayBaseline(List<Sample> replay)
+    {
+        SwerveModulePosition[] positions = new SwerveModulePosition[MODULES];
+        for (int i = 0; i < MODULES; i++)
+        {
+            positions[i] = new SwerveModulePosition();
+        }
+        SwerveDriveOdometry baseline = new SwerveDriveOdometry(
+                DriveConstants.kDriveKinematics, new Rotation2d(), positions);
+
+        for (Sample sample : replay)
+        {
+            for (int i = 0; i < MODULES; i++)
+            {
+                positions[i] = new SwerveModulePosition(sample.distances()[i], new Rotation2d(sample.angles()[i]));
+            }
+            baseline.update(new Rotation2d(sample.gyroRad()), positions);
+        }
+
+        Pose2d truth = replay.get(replay.size() - 1).truePose();
+        return baseline.getPoseMeters().getTranslation().getDistance(truth.getTranslation());
+    }
+
+    private static double replaySlipRejecting(SlipRejectingOdometry odometry, List<Sample> replay)
+    {
+        for (Sample sample : replay)
+        {
+            update(odometry, sample);
+        }
+
+        Pose2d truth = replay.get(replay.size() - 1).truePose();
+        return odometry.getPoseMeters().getTranslation().getDistance(truth.getTranslation());
+    }
+
+    @Test
+    @DisplayName("Clean drive while spinning should trust every module despite out of phase frames")
+    void cleanReplayKeepsEveryModule()
+    {
+        List<Sample> replay = recordReplay(8.0, false, false);
+        SlipRejectingOdometry odometry = newOdometry();
+
+        for (Sample sample : replay)
+        {
+            update(odometry, sample);
+            for (int i = 0; i < MODULES; i++)
+            {
+                assertEquals(1.0, odometry.getModuleWeight(i), 1E-9,
+                        "Module " + i + " down-weighted at t=" + sample.time());
+            }
+            assertFalse(odometry.isCollisionDetected());
+        }
+
+        Pose2d truth = replay.get(replay.size() - 1).truePose();
+        double error = odometry.getPoseMeters().getTranslation().getDistance(truth.getTranslation());
+        assertTrue(error < 0.05, "Clean replay drifted " + error + " m");
+        assertTrue(error < replayBaseline(replay), "Clean replay did worse than SwerveDriveOdometry");
+    }
+
+    @Test
+    @DisplayName("Replay with wheel slip and a collision should stay well ahead of SwerveDriveOdometry")
+    void faultyReplayBeatsBaseline()
+    {
+        List<Sample> replay = recordReplay(8.0, true, false);
+
+        double baselineError = replayBaseline(replay);
+        double error = replaySlipRejecting(newOdometry(), replay);
+
+        assertTrue(baselineError > 0.2, "Faults should visibly hurt the baseline, got " + baselineError + " m");
+        assertTrue(error < 0.06, "Slip-rejecting odometry drifted " + error + " m");
+        assertTrue(error < baselineError / 5, error + " m is not a clear gain over " + baselineError + " m");
+    }
+
+    @Test
+    @DisplayName("Slipping module should be dropped and a collision should be flagged")
+    void slippingModuleIsRejected()
+    {
+        List<Sample> replay = recordReplay(8.0, true, false);
+        SlipRejectingOdometry odometry = newOdometry();
+
+        // Give the slipping module's frame and the next gyro sample time to land
+        double settle = 2 * OdometryConstants.kOdometryPeriodSeconds + 1.0 / OdometryConstants.kNavXUpdateRateHz;
+        boolean sawCollision = false;
+        for (Sample sample : replay)
+        {
+            update(odometry, sample);
+
+            if (sample.time() > SLIP_START + settle && sample.time() < SLIP_END)
+            {
+                assertEquals(0.0, odometry.getModuleWeight(2), 1E-9, "Slipping module kept at t=" + sample.time());
+                assertEquals(1.0, odometry.getModuleWeight(0), 1E-9, "Healthy module dropped at t=" + sample.time());
+            }
+            sawCollision |= odometry.isCollisionDetected();
+        }
+
+        assertTrue(sawCollision);
+        assertFalse(odometry.isCollisionDetected());
+    }
+
+    @Test
+    @DisplayName("A navX outage should fall back to the modules for rotation")
+    void gyroOutageFallsBackToModules()
+    {
+        List<Sample> replay = recordReplay(8.0, false, true);
+
+        double error = replaySlipRejecting(newOdometry(), replay);
+
+        assertTrue(error < 0.1, "Odometry drifted " + error + " m across the outage");
+    }
+
+    @Test
+    @DisplayName("An update should use a small fraction of the 250 Hz budget")
+    void updateFitsLoopBudget()
+    {
+        List<Sample> replay = recordReplay(8.0, true, false);
+        SlipRejectingOdometry odometry = newOdometry();
+
+        // Warm up the JIT before timing
+        replaySlipRejecting(odometry, replay);
+
+        long start = System.nanoTime();
+        for (int pass = 0; pass < 10; pass++)
+        {
+            odometry.resetPosition(0.0, new Pose2d(), 0.0, 0.0, new double[MODULES], INITIAL_ANGLES);
+            replaySlipRejecting(odometry, replay);
+        }
+        double averageSeconds = (System.nanoTime() - start) * 1E-9 / (10.0 * replay.size());
+
+        assertTrue(averageSeconds < OdometryConstants.kOdometryPeriodSeconds / 20,
+                "Average update took " + averageSeconds * 1E6 + " us");
+    }
+}
@@ -0,0 +1,150 @@
+package com.celestial.sysid;
+
+import com.celestial.Constants.ModuleConstants;
+import com.celestial.Constants.OdometryConstants;
+import com.celestial.subsystems.SwerveModule;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CharacterizationRoutineTest
+{
+    private static final double DT = OdometryConstants.kOdometryPeriodSeconds;
+    private static final DCMotor NEO = DCMotor.getNEO(1);
+
+    private SwerveModule module;
+
+    @BeforeEach
+    void setUp()
+    {
+        assertTrue(HAL.initialize(500, 0));
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+
+        // IDs and channel away from the real modules so nothing clashes with other tests
+        module = new SwerveModule(40, 41, false, false, 7, 0, false);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        module.close();
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.notifyNewData();
+    }
+
+    /** Runs the routine to completion against the simulated module, stepping both at the high rate. */
+    private CharacterizationLog runRoutine(CharacterizationMechanism mechanism)
+    {
+        CharacterizationRoutine routine = new CharacterizationRoutine(mechanism);
+        double time = 0;
+        routine.start(time);
+
+        for (int i = 0; i < 10_000 && !routine.isFinished(); i++)
+        {
+            time += DT;
+            module.simulationStep(DT);
+            routine.update(time);
+        }
+
+        assertTrue(routine.isFinished());
+        assertTrue(routine.getLog().size() < routine.getLog().capacity(), "Samples were dropped");
+        return routine.getLog();
+    }
+
+    @Test
+    @DisplayName("Drive characterization should recover the simulated motor model")
+    void driveFitMatchesSimulation()
+    {
+        CharacterizationLog log = runRoutine(new CharacterizationMechanism()
+        {
+            @Override
+            public void setVoltage(double volts)
+            {
+                module.setDriveVoltage(volts);
+            }
+
+            @Override
+            public double getPosition()
+            {
+                return module.getDrivePosition();
+            }
+
+            @Override
+            public double getVelocity()
+            {
+                return module.getDriveVelocity();
+            }
+        });
+
+        double gearing = 1 / ModuleConstants.kDriveMotorGearRatio;
+        double wheelRadius = ModuleConstants.kWheelDiamater / 2;
+        double expectedKv = gearing / (NEO.KvRadPerSecPerVolt * wheelRadius);
+        double expectedKa = NEO.rOhms * ModuleConstants.kDriveSimMoiKgMetersSquared
+                / (gearing * NEO.KtNMPerAmp * wheelRadius);
+
+        CharacterizationResult result = CharacterizationFit.forVelocityControl(log);
+
+        assertEquals(0.0, result.kS(), 0.1);
+        assertEquals(expectedKv, result.kV(), expectedKv * 0.05);
+        assertEquals(expectedKa, result.kA(), expectedKa * 0.15);
+        assertTrue(result.rSquared() > 0.99, "r2 was " + result.rSquared());
+        assertTrue(result.kP() > 0);
+        assertEquals(0.0, result.kD());
+    }
+
+    @Test
+    @DisplayName("Steering characterization should recover the simulated motor model and suggest PD gains")
+    void rotationFitMatchesSimulation()
+    {
+        CharacterizationLog log = runRoutine(new CharacterizationMechanism()
+        {
+            @Override
+            public void setVoltage(double volts)
+            {
+                module.setRotationVoltage(volts);
+            }
+
+            @Override
+            public double getPosition()
+            {
+                return module.getRotationPosition();
+            }
+
+            @Override
+            public double getVelocity()
+            {
+                return module.getRotationVelocity();
+            }
+        });
+
+        double gearing = 1 / ModuleConstants.kRotationMotorGearRatio;
+        double expectedKv = gearing / NEO.KvRadPerSecPerVolt;
+        double expectedKa = NEO.rOhms * ModuleConstants.kRotationSimMoiKgMetersSquared / (gearing * NEO.KtNMPerAmp);
+
+        CharacterizationResult result = CharacterizationFit.forPositionControl(log);
+
+        assertEquals(0.0, result.kS(), 0.1);
+        assertEquals(expectedKv, result.kV(), expectedKv * 0.05);
+        assertEquals(expectedKa, result.kA(), expectedKa * 0.15);
+        assertTrue(result.kP() > 0);
+        assertTrue(result.kD() > 0);
+    }
+
+    @Test
+    @DisplayName("An empty log should give NaN gains rather than throwing")
+    void emptyLogGivesNaN()
+    {
+        CharacterizationResult result = CharacterizationFit.forVelocityControl(new CharacterizationLog(16));
+
+        assertTrue(Double.isNaN(result.kV()));
+        assertTrue(Double.isNaN(result.kP()));
+        assertEquals(0, result.sampleCount());
+    }
+}
@@ -0,0 +1,97 @@
+package com.celestial.tuning;
+
+import com.celestial.Constants.ModuleConstants;
+import com.celestial.Constants.OIConstants;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TunableParametersTest
+{
+    private NetworkTableInstance inst;
+    private TunableParameters tuning;
+
+    @BeforeEach
+    void setUp()
+    {
+        inst = NetworkTableInstance.create();
+        tuning = new TunableParameters(inst);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        tuning.close();
+        inst.close();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline)
+        {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    @DisplayName("Registry should start from the values in Constants")
+    void startsFromConstants()
+    {
+        TuningSnapshot snapshot = tuning.getSnapshot();
+        assertEquals(ModuleConstants.kPRotation, snapshot.rotationP());
+        assertEquals(ModuleConstants.kDRotation, snapshot.rotationD());
+        assertEquals(OIConstants.kDeadband, snapshot.deadband());
+        assertEquals(ModuleConstants.kDriveOpenLoopRampRateSeconds, snapshot.driveRampRateSeconds());
+    }
+
+    @Test
+    @DisplayName("A NetworkTables change should swap in a new snapshot and reach background consumers")
+    void changeSwapsSnapshot() throws InterruptedException
+    {
+        TuningSnapshot before = tuning.getSnapshot();
+        CountDownLatch pushed = new CountDownLatch(1);
+        AtomicReference<TuningSnapshot> pushedSnapshot = new AtomicReference<>();
+        tuning.onChange(snapshot -> {
+            pushedSnapshot.set(snapshot);
+            pushed.countDown();
+        });
+
+        inst.getTable("Tuning").getEntry("Rotation kP").setDouble(1.5);
+        waitFor(() -> tuning.getSnapshot() != before);
+
+        TuningSnapshot after = tuning.getSnapshot();
+        assertEquals(1.5, after.rotationP());
+        assertEquals(before.rotationD(), after.rotationD());
+        assertEquals(ModuleConstants.kPRotation, before.rotationP());
+
+        assertTrue(pushed.await(2, TimeUnit.SECONDS));
+        assertSame(after, pushedSnapshot.get());
+    }
+
+    @Test
+    @DisplayName("An invalid value should keep its last good value without holding back the others")
+    void invalidValueKeepsLastGood() throws InterruptedException
+    {
+        TuningSnapshot before = tuning.getSnapshot();
+
+        // Listener events arrive in order, so once kD shows up the bad deadband has been handled too
+        inst.getTable("Tuning").getEntry("Deadband").setDouble(-0.5);
+        inst.getTable("Tuning").getEntry("Rotation kD").setDouble(0.02);
+        waitFor(() -> tuning.getSnapshot().rotationD() == 0.02);
+
+        TuningSnapshot after = tuning.getSnapshot();
+        assertEquals(0.02, after.rotationD());
+        assertEquals(before.deadband(), after.deadband());
+        assertEquals(before.rotationP(), after.rotationP());
+    }
+}